@@ -0,0 +1,255 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An Animation moves shapes on a canvas at a steady rate. The update code is
+ * run a fixed number of times per second no matter how long drawing takes,
+ * and the canvas is redrawn once after each round of updates. If drawing
+ * falls behind, updates are run back to back to catch up and the frames that
+ * could not be shown in time are skipped. If the canvas has collision
+ * handlers, collisions are checked after each round of updates, so the
+ * handlers' changes are drawn in the same frame.
+ *
+ * <pre>
+ * Animation animation = canvas.animate(30, () -&gt; ball.moveRight());
+ * animation.run();
+ * </pre>
+ *
+ * @version 2026.10.17
+ */
+public class Animation implements Runnable {
+    /**
+     * ***********************************************************************
+     * Inner interface Update - a functional interface for code that moves
+     * shapes forward by one step of the animation
+     */
+    public interface Update {
+        public void update();
+    }
+
+    /**
+     * ***********************************************************************
+     * Inner interface Render - a functional interface for code that runs just
+     * before each frame is drawn. The fraction tells how far the animation
+     * is between the last update and the next one, from 0 up to 1, so
+     * shapes can be placed between their old and new positions.
+     */
+    public interface Render {
+        public void render(double fraction);
+    }
+
+    // Most updates to run back to back before a frame is drawn anyway
+    private static final int MAX_UPDATES_PER_FRAME = 5;
+    // Number of recent frame times kept for the frame time percentiles
+    private static final int FRAME_HISTORY = 1024;
+
+    private final Canvas canvas;
+    private final Update update;
+    private final Render render;
+    private final long stepNanos;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    // Frame statistics
+    private long framesShown = 0;
+    private long framesDropped = 0;
+    private long updatesRun = 0;
+    private long runNanos = 0;
+    private final long[] frameTimes = new long[FRAME_HISTORY];
+    private int frameTimeCount = 0;
+
+    /**
+     * Create an animation of shapes on a canvas.
+     *
+     * @param canvas the canvas to redraw after each round of updates
+     * @param updatesPerSecond how many times a second to run the update code
+     * @param update the code that moves the shapes one step
+     * @param render the code to run before each frame is drawn, or null
+     */
+    public Animation(Canvas canvas, int updatesPerSecond, Update update, Render render) {
+        if (updatesPerSecond <= 0) {
+            throw new IllegalArgumentException("Updates per second must be > 0");
+        }
+
+        this.canvas = canvas;
+        this.update = update;
+        this.render = render;
+        this.stepNanos = 1_000_000_000L / updatesPerSecond;
+    }
+
+    /**
+     * Run the animation on its own thread.
+     */
+    public synchronized void start() {
+        if (thread != null && thread.isAlive()) {
+            throw new IllegalStateException("Animation already running");
+        }
+
+        // Set before the thread starts, so a stop() straight after this
+        // isn't undone
+        running = true;
+        thread = new Thread(this::animate, "Animation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the animation after the frame it is on.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Determine if the animation is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Run the animation on the current thread until stop() is called.
+     */
+    @Override
+    public void run() {
+        running = true;
+        animate();
+    }
+
+    /**
+     * Run the frames of the animation until it is stopped.
+     */
+    private void animate() {
+        long started = System.nanoTime();
+        long previous = started;
+        long nextFrame = started + stepNanos;
+        long behind = 0;
+
+        while (running) {
+            long frameStart = System.nanoTime();
+            behind += frameStart - previous;
+            previous = frameStart;
+
+            canvas.beginBatch();
+            try {
+                // Run as many fixed steps as the time that has passed calls for
+                int updates = 0;
+                while (behind >= stepNanos && updates < MAX_UPDATES_PER_FRAME) {
+                    update.update();
+                    behind -= stepNanos;
+                    updates++;
+                }
+
+                // Give up on steps that are too far behind to catch up on
+                if (behind >= stepNanos) {
+                    behind %= stepNanos;
+                }
+
+                // Let collision handlers respond before the frame is drawn,
+                // unless the render thread does it
+                if (updates > 0 && !canvas.hasRenderThread()) {
+                    canvas.checkFrameCollisions();
+                }
+
+                if (render != null) {
+                    render.render((double) behind / stepNanos);
+                }
+
+                synchronized (this) {
+                    updatesRun += updates;
+                }
+            } finally {
+                // Ending the batch draws the frame
+                canvas.endBatch();
+            }
+
+            long frameEnd = System.nanoTime();
+
+            // Skip any frames whose time has already passed
+            long missed = 0;
+            if (frameEnd > nextFrame) {
+                missed = (frameEnd - nextFrame) / stepNanos;
+                nextFrame += missed * stepNanos;
+            }
+
+            synchronized (this) {
+                framesShown++;
+                framesDropped += missed;
+                frameTimes[frameTimeCount % FRAME_HISTORY] = frameEnd - frameStart;
+                frameTimeCount++;
+                runNanos = frameEnd - started;
+            }
+
+            // Wait for the next frame
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            nextFrame += stepNanos;
+        }
+    }
+
+    /**
+     * Determine how many frames have been drawn per second since the
+     * animation started.
+     *
+     * @return the frames per second achieved
+     */
+    public synchronized double getFramesPerSecond() {
+        if (runNanos == 0) {
+            return 0;
+        }
+
+        return framesShown * 1e9 / runNanos;
+    }
+
+    /**
+     * Determine how many frames were skipped because drawing fell behind.
+     *
+     * @return the number of frames skipped
+     */
+    public synchronized long getDroppedFrames() {
+        return framesDropped;
+    }
+
+    /**
+     * Determine how many times the update code has run.
+     *
+     * @return the number of updates run
+     */
+    public synchronized long getUpdates() {
+        return updatesRun;
+    }
+
+    /**
+     * Determine how long it took to update and draw recent frames.
+     *
+     * @param percentile the percentile to find, from 0 to 100
+     * @return the frame time at that percentile, in milliseconds
+     */
+    public synchronized double getFrameTime(double percentile) {
+        int count = Math.min(frameTimeCount, FRAME_HISTORY);
+        if (count == 0) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(frameTimes, count);
+        Arrays.sort(sorted);
+
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        index = Math.max(0, Math.min(count - 1, index));
+        return sorted[index] / 1e6;
+    }
+
+    /**
+     * Describe how smoothly the animation has been running.
+     */
+    @Override
+    public String toString() {
+        return String.format("%.1f fps, frame time p50 %.2f ms p95 %.2f ms p99 %.2f ms,"
+                             + " %d frames dropped",
+                             getFramesPerSecond(), getFrameTime(50), getFrameTime(95),
+                             getFrameTime(99), getDroppedFrames());
+    }
+}
@@ -1,5 +1,7 @@
 import java.awt.Graphics;
 import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Arc2D;
 
 /**
  * An arc that can be manipulated and that draws itself on a canvas.
@@ -17,6 +19,7 @@ public class Arc
     private int extent;
     private Color color;
     private boolean isVisible;
+    private Canvas canvas;
     
     /**
      * Create a new arc at default position with default color.
@@ -61,13 +64,43 @@ public class Arc
             makeVisible();
         }
     }
+
+    /**
+     * Create an arc with a given position, shape and color.
+     * @param x the x location of the arc
+     * @param y the y location of the arc
+     * @param diameter the diameter of the arc
+     * @param startAngle the angle the arc sweep starts at
+     * @param extent the angle the arc sweeps, from 0 to 359
+     * @param color the color of the arc
+     */
+    Arc(int x, int y, int diameter, int startAngle, int extent, Color color)
+    {
+        xPosition = x;
+        yPosition = y;
+        this.diameter = diameter;
+        this.startAngle = startAngle;
+        this.extent = extent;
+        this.color = color;
+    }
     
     /**
      * Make this arc visible. If it was already visible, do nothing.
      */
     public void makeVisible()
+    {
+        makeVisible(Canvas.getCanvas());
+    }
+
+    /**
+     * Make this arc visible on a given canvas. If it was already visible,
+     * do nothing.
+     * @param canvas the canvas to draw the arc on
+     */
+    public void makeVisible(Canvas canvas)
     {
         if (!isVisible) {
+            this.canvas = canvas;
             isVisible = true;
             add();
         }
@@ -133,6 +166,7 @@ public class Arc
     public void moveHorizontal(int distance)
     {
         xPosition += distance;
+        update();
     }
 
     /**
@@ -142,6 +176,7 @@ public class Arc
     public void moveVertical(int distance)
     {
         yPosition += distance;
+        update();
     }
 
     /**
@@ -151,6 +186,7 @@ public class Arc
     public void setX(int xPosition)
     {
         this.xPosition = xPosition;
+        update();
     }
     
     /**
@@ -160,6 +196,7 @@ public class Arc
     public void setY(int yPosition)
     {
         this.yPosition = yPosition;
+        update();
     }
     
     /**
@@ -171,6 +208,7 @@ public class Arc
     {
         xPosition = x;
         yPosition = y;
+        update();
     }
     
     /**
@@ -188,7 +226,7 @@ public class Arc
      */
     public int getY()
     {
-        return xPosition;
+        return yPosition;
     }
     
     /**
@@ -202,6 +240,7 @@ public class Arc
         }
         
         extent = 360 - (2 * startAngle);
+        update();
     }
 
     
@@ -216,6 +255,7 @@ public class Arc
         }
         
         extent = 360 - (2 * startAngle);
+        update();
     }
     
     /**
@@ -226,6 +266,7 @@ public class Arc
     public void changeArcBeginning(int angle)
     {
          startAngle = angle;
+        update();
     }
     
     /**
@@ -240,6 +281,7 @@ public class Arc
         if (extent < 0) {
             extent += 360;
         }
+        update();
     }
         
     /**
@@ -278,6 +320,7 @@ public class Arc
     public void changeSize(int newDiameter)
     {
         diameter = newDiameter;
+        update();
     }
 
     /**
@@ -288,6 +331,15 @@ public class Arc
     {
         return diameter;
     }
+
+    /**
+     * Determine the color of the arc
+     * @return the color the arc is drawn in
+     */
+    Color getColor()
+    {
+        return color;
+    }
     
     /**
      * Change the color. Valid colors are "red", "yellow", "blue", "green",
@@ -299,6 +351,7 @@ public class Arc
     public void changeColor(String newColor)
     {
         color = Canvas.getColor(newColor);
+        update();
     }
 
     /**
@@ -307,11 +360,15 @@ public class Arc
     private void add()
     {
         if(isVisible) {
-            Canvas canvas = Canvas.getCanvas();
             canvas.add(this, (g) -> {g.setColor(color);
                                      g.fillArc(xPosition, yPosition,
                                                 diameter, diameter,
-                                                startAngle, extent);});
+                                                startAngle, extent);},
+                             () -> new Rectangle(xPosition, yPosition,
+                                                 diameter, diameter),
+                             () -> new Arc2D.Double(xPosition, yPosition,
+                                                    diameter, diameter,
+                                                    startAngle, extent, Arc2D.PIE));
         }
     }
 
@@ -321,11 +378,20 @@ public class Arc
     private void remove()
     {
         if(isVisible) {
-            Canvas canvas = Canvas.getCanvas();
             canvas.remove(this);
         }
     }
 
+    /**
+     * Tell the canvas that the arc has changed.
+     */
+    private void update()
+    {
+        if(isVisible) {
+            canvas.update(this);
+        }
+    }
+
     /**
      * Get a text description of the arc.
      */
@@ -0,0 +1,373 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchRenderer draws many pictures in one program run and saves each one
+ * to a PNG file. Pictures are drawn by a pool of worker threads, each with
+ * its own headless canvas. Scene code is given that canvas, and shapes made
+ * visible with makeVisible() while the scene is drawn land on it as well.
+ *
+ * Scenes can be given as code, or read from a text file of scene
+ * descriptions:
+ *
+ * <pre>
+ * scene sunset.png My Sunset
+ * background #ffcc88
+ * circle 400 300 120 yellow
+ * rect 0 450 800 150 green
+ * triangle 200 250 160 200 brown
+ * arc 600 100 80 30 330 black
+ * end
+ * </pre>
+ *
+ * Triangle positions are the top point; sizes are width then height. Arc
+ * angles are the start and end angles in degrees.
+ *
+ * Usage: java BatchRenderer scenes.txt [outputFolder] [threads]
+ *
+ * @version 2026.10.17
+ */
+public class BatchRenderer {
+    /**
+     * ***********************************************************************
+     * Inner interface Scene - a functional interface for code that draws a
+     * picture by making shapes visible on the canvas it is given
+     */
+    public interface Scene {
+        public void draw(Canvas canvas);
+    }
+
+    private final int width;
+    private final int height;
+    private final ExecutorService workers;
+    private final ThreadLocal<Canvas> canvases;
+    private final ThreadLocal<PngEncoder> encoders;
+    // Every worker's encoder, to close on shutdown
+    private final List<PngEncoder> allEncoders = Collections.synchronizedList(new ArrayList<>());
+
+    // Timings of each stage of every picture, in nanoseconds
+    private final StageTimes buildTimes = new StageTimes("build");
+    private final StageTimes renderTimes = new StageTimes("render");
+    private final StageTimes encodeTimes = new StageTimes("encode");
+    private final StageTimes writeTimes = new StageTimes("write");
+    private final long startTime;
+
+    /**
+     * Create a batch renderer.
+     *
+     * @param threads the number of pictures to draw at the same time
+     * @param width the width of each picture
+     * @param height the height of each picture
+     */
+    public BatchRenderer(int threads, int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.canvases = ThreadLocal.withInitial(() ->
+            Canvas.createHeadlessCanvas("", this.width, this.height, Color.white));
+        this.encoders = ThreadLocal.withInitial(() -> {
+            PngEncoder encoder = new PngEncoder();
+            allEncoders.add(encoder);
+            return encoder;
+        });
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Queue a picture to be drawn and saved.
+     *
+     * @param title the title to show under the picture
+     * @param scene the code that draws the picture
+     * @param file the file to save the picture to
+     * @return a future that completes with the file once it is saved
+     */
+    public Future<File> submit(String title, Scene scene, File file) {
+        return workers.submit(() -> render(title, scene, file));
+    }
+
+    /**
+     * Draw one picture on the current worker's canvas and save it.
+     */
+    private File render(String title, Scene scene, File file) throws IOException {
+        Canvas canvas = canvases.get();
+        canvas.erase();
+        canvas.setTitle(title);
+        canvas.setBackgroundColor(Color.white);
+
+        long start = System.nanoTime();
+        Canvas.setThreadCanvas(canvas);
+        try {
+            canvas.batch(() -> scene.draw(canvas));
+        } finally {
+            Canvas.setThreadCanvas(null);
+        }
+        long built = System.nanoTime();
+
+        BufferedImage image = canvas.createImage();
+        long rendered = System.nanoTime();
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream(64 * 1024);
+        encoders.get().encode(image, png);
+        long encoded = System.nanoTime();
+
+        Files.write(file.toPath(), png.toByteArray());
+        long written = System.nanoTime();
+
+        buildTimes.add(built - start);
+        renderTimes.add(rendered - built);
+        encodeTimes.add(encoded - rendered);
+        writeTimes.add(written - encoded);
+
+        return file;
+    }
+
+    /**
+     * Stop accepting pictures and wait for the queued ones to be saved.
+     */
+    public void shutdown() throws InterruptedException {
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        synchronized (allEncoders) {
+            for (PngEncoder encoder : allEncoders) {
+                encoder.close();
+            }
+            allEncoders.clear();
+        }
+    }
+
+    /**
+     * Describe how fast pictures have been drawn and how long each stage
+     * took.
+     *
+     * @return a text report of the pictures drawn
+     */
+    public String report() {
+        int count = writeTimes.count();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%d pictures in %.2f s (%.1f pictures/s)%n",
+                count, seconds, count / seconds));
+        text.append(buildTimes).append(System.lineSeparator());
+        text.append(renderTimes).append(System.lineSeparator());
+        text.append(encodeTimes).append(System.lineSeparator());
+        text.append(writeTimes).append(System.lineSeparator());
+        return text.toString();
+    }
+
+    /**
+     * Read scene descriptions from a file (or standard input if the file is
+     * "-") and save a picture of each one.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: java BatchRenderer scenes.txt [outputFolder] [threads]");
+            System.exit(1);
+        }
+
+        File folder = new File(args.length > 1 ? args[1] : ".");
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                                      : Runtime.getRuntime().availableProcessors();
+        folder.mkdirs();
+
+        BatchRenderer renderer = new BatchRenderer(threads, 800, 600);
+        List<Future<File>> saved = new ArrayList<>();
+
+        // The workers keep the program running until they are shut down, so
+        // that has to happen even if the scenes can't be read
+        IOException readFailure = null;
+        try {
+            Reader input = args[0].equals("-") ? new InputStreamReader(System.in)
+                                               : new FileReader(args[0]);
+            try (BufferedReader lines = new BufferedReader(input)) {
+                readScenes(lines, folder, renderer, saved);
+            }
+        } catch (IOException e) {
+            // Save the pictures already queued before reporting the problem
+            readFailure = e;
+        } finally {
+            renderer.shutdown();
+        }
+
+        int failed = 0;
+        for (Future<File> picture : saved) {
+            try {
+                picture.get();
+            } catch (ExecutionException e) {
+                System.err.println(e.getCause());
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            System.err.println(failed + " pictures could not be saved.");
+        }
+
+        System.out.print(renderer.report());
+
+        if (readFailure != null) {
+            throw readFailure;
+        }
+    }
+
+    /**
+     * Read scene descriptions and queue each one to be drawn as soon as it
+     * has been read.
+     */
+    private static void readScenes(BufferedReader lines, File folder, BatchRenderer renderer,
+                                   List<Future<File>> saved) throws IOException {
+        String line;
+        String fileName = null;
+        String title = "";
+        List<String[]> commands = new ArrayList<>();
+        int lineNumber = 0;
+
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] words = line.split("\\s+");
+            if (words[0].equals("scene")) {
+                if (words.length < 2) {
+                    throw new IOException("Line " + lineNumber + ": scene needs a file name");
+                }
+                fileName = words[1];
+                title = String.join(" ", Arrays.asList(words).subList(2, words.length));
+                commands = new ArrayList<>();
+            } else if (words[0].equals("end")) {
+                if (fileName == null) {
+                    throw new IOException("Line " + lineNumber + ": end without scene");
+                }
+                List<String[]> shapes = commands;
+                saved.add(renderer.submit(title, canvas -> drawScene(shapes, canvas),
+                                          new File(folder, fileName)));
+                fileName = null;
+            } else if (fileName == null) {
+                throw new IOException("Line " + lineNumber + ": " + words[0] + " outside a scene");
+            } else {
+                commands.add(words);
+            }
+        }
+
+        if (fileName != null) {
+            throw new IOException("Scene " + fileName + " has no end");
+        }
+    }
+
+    /**
+     * Draw the shapes listed in a scene description.
+     */
+    private static void drawScene(List<String[]> commands, Canvas canvas) {
+        for (String[] words : commands) {
+            switch (words[0]) {
+                case "background":
+                    canvas.setBackgroundColor(words[1]);
+                    break;
+                case "circle": {
+                    Circle circle = new Circle();
+                    circle.setPosition(number(words[1]), number(words[2]));
+                    circle.changeSize(number(words[3]));
+                    circle.changeColor(words[4]);
+                    circle.makeVisible(canvas);
+                    break;
+                }
+                case "rect": {
+                    Rect rect = new Rect();
+                    rect.setPosition(number(words[1]), number(words[2]));
+                    rect.changeSize(number(words[4]), number(words[3]));
+                    rect.changeColor(words[5]);
+                    rect.makeVisible(canvas);
+                    break;
+                }
+                case "triangle": {
+                    Triangle triangle = new Triangle();
+                    triangle.setPosition(number(words[1]), number(words[2]));
+                    triangle.changeSize(number(words[4]), number(words[3]));
+                    triangle.changeColor(words[5]);
+                    triangle.makeVisible(canvas);
+                    break;
+                }
+                case "arc": {
+                    Arc arc = new Arc(number(words[1]), number(words[2]), number(words[3]),
+                                      number(words[4]), number(words[5]), words[6], false);
+                    arc.makeVisible(canvas);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown shape: " + words[0]);
+            }
+        }
+    }
+
+    /**
+     * Read a whole number from a scene description.
+     */
+    private static int number(String word) {
+        return Integer.parseInt(word);
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class StageTimes - the times taken by one stage of drawing each
+     * picture.
+     */
+    private static class StageTimes {
+        private final String stage;
+        private long[] times = new long[256];
+        private int count = 0;
+
+        StageTimes(String stage) {
+            this.stage = stage;
+        }
+
+        synchronized void add(long nanos) {
+            if (count == times.length) {
+                times = Arrays.copyOf(times, count * 2);
+            }
+            times[count++] = nanos;
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (count == 0) {
+                return String.format("%-7s no pictures", stage);
+            }
+
+            long[] sorted = Arrays.copyOf(times, count);
+            Arrays.sort(sorted);
+
+            long total = 0;
+            for (long time : sorted) {
+                total += time;
+            }
+
+            return String.format("%-7s mean %8.3f ms  p50 %8.3f ms  p95 %8.3f ms  max %8.3f ms",
+                    stage, total / 1e6 / count, sorted[count / 2] / 1e6,
+                    sorted[(int) (count * 0.95)] / 1e6, sorted[count - 1] / 1e6);
+        }
+    }
+}
@@ -0,0 +1,645 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * BulkShapes holds a large number of simple shapes on a canvas, such as the
+ * particles in an explosion, without making an object for each one. Each
+ * shape is known by a handle number, and its position, size, angles and
+ * color are kept in plain int arrays, one array per property.
+ *
+ * The methods match the ones on Circle, Rect, Triangle and Arc, with the
+ * handle of the shape to change as the first parameter. As with those
+ * classes, changing a shape does not redraw the canvas; call redraw() when
+ * a round of changes is done. Only the area the changed shapes covered
+ * before and after the changes is repainted.
+ *
+ * All the bulk shapes on a canvas are drawn together, in the order they were
+ * added, at the point in the picture where the canvas's BulkShapes was first
+ * used. The handle of a removed shape may be given to a shape added later.
+ * Changes wait while the shapes are being drawn, but the tiles of a
+ * picture can draw them at the same time.
+ *
+ * @version 2026.10.17
+ */
+public class BulkShapes {
+    // Shape types, also used in scene files
+    static final byte NONE = 0;
+    static final byte CIRCLE = 1;
+    static final byte RECT = 2;
+    static final byte TRIANGLE = 3;
+    static final byte ARC = 4;
+
+    // One entry per handle in each array. Circles and arcs keep their
+    // diameter as the width; only arcs use the angles.
+    private byte[] type;
+    private int[] xPosition;
+    private int[] yPosition;
+    private int[] width;
+    private int[] height;
+    private int[] startAngle;
+    private int[] extent;
+    private int[] argb;
+
+    private int used = 0;
+    private int count = 0;
+    private int[] freeHandles = new int[16];
+    private int freeCount = 0;
+
+    // Held for reading while drawing and for writing while changing shapes
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // The area covered by all the shapes, which only grows until they are
+    // cleared, and the area covered by shapes changed since the canvas
+    // last asked, before and after the changes
+    private int boundsLeft = Integer.MAX_VALUE;
+    private int boundsTop = Integer.MAX_VALUE;
+    private int boundsRight = Integer.MIN_VALUE;
+    private int boundsBottom = Integer.MIN_VALUE;
+    private int changedLeft = Integer.MAX_VALUE;
+    private int changedTop = Integer.MAX_VALUE;
+    private int changedRight = Integer.MIN_VALUE;
+    private int changedBottom = Integer.MIN_VALUE;
+
+    // Recently used colors. Color is immutable, so threads drawing at the
+    // same time can share them.
+    private final Color[] colors = new Color[256];
+
+    /**
+     * Create an empty set of bulk shapes.
+     *
+     * @param capacity the number of shapes to make room for at first
+     */
+    BulkShapes(int capacity) {
+        capacity = Math.max(capacity, 16);
+        type = new byte[capacity];
+        xPosition = new int[capacity];
+        yPosition = new int[capacity];
+        width = new int[capacity];
+        height = new int[capacity];
+        startAngle = new int[capacity];
+        extent = new int[capacity];
+        argb = new int[capacity];
+    }
+
+    /**
+     * Add a circle.
+     *
+     * @param x the x location of the circle's bounding box
+     * @param y the y location of the circle's bounding box
+     * @param diameter the diameter of the circle
+     * @param color the name of the color for the circle
+     * @return the handle of the new circle
+     */
+    public int addCircle(int x, int y, int diameter, String color) {
+        return add(CIRCLE, x, y, diameter, diameter, 0, 0, Canvas.getColor(color).getRGB());
+    }
+
+    /**
+     * Add a rectangle.
+     *
+     * @param x the x location of the rectangle
+     * @param y the y location of the rectangle
+     * @param width the width of the rectangle
+     * @param height the height of the rectangle
+     * @param color the name of the color for the rectangle
+     * @return the handle of the new rectangle
+     */
+    public int addRect(int x, int y, int width, int height, String color) {
+        return add(RECT, x, y, width, height, 0, 0, Canvas.getColor(color).getRGB());
+    }
+
+    /**
+     * Add a triangle.
+     *
+     * @param x the x location of the triangle's top point
+     * @param y the y location of the triangle's top point
+     * @param width the width of the triangle's base
+     * @param height the height of the triangle, positive points up
+     * @param color the name of the color for the triangle
+     * @return the handle of the new triangle
+     */
+    public int addTriangle(int x, int y, int width, int height, String color) {
+        return add(TRIANGLE, x, y, width, height, 0, 0, Canvas.getColor(color).getRGB());
+    }
+
+    /**
+     * Add an arc.
+     *
+     * @param x the x location of the arc's bounding box
+     * @param y the y location of the arc's bounding box
+     * @param diameter the diameter of the arc
+     * @param arcStartAngle the angle the arc sweep starts at
+     * @param arcEndAngle the angle the arc sweep ends at
+     * @param color the name of the color for the arc
+     * @return the handle of the new arc
+     */
+    public int addArc(int x, int y, int diameter, int arcStartAngle, int arcEndAngle,
+                      String color) {
+        return add(ARC, x, y, diameter, diameter, arcStartAngle,
+                   arcExtent(arcStartAngle, arcEndAngle), Canvas.getColor(color).getRGB());
+    }
+
+    /**
+     * Store a new shape in the first free handle.
+     *
+     * @return the handle of the new shape
+     */
+    int add(byte shapeType, int x, int y, int w, int h, int start, int sweep, int color) {
+        lock.writeLock().lock();
+        try {
+            int handle;
+            if (freeCount > 0) {
+                handle = freeHandles[--freeCount];
+            } else {
+                if (used == type.length) {
+                    grow();
+                }
+                handle = used++;
+            }
+
+            type[handle] = shapeType;
+            xPosition[handle] = x;
+            yPosition[handle] = y;
+            width[handle] = w;
+            height[handle] = h;
+            startAngle[handle] = start;
+            extent[handle] = sweep;
+            argb[handle] = color;
+            count++;
+
+            changed(handle);
+            return handle;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Make room for more shapes.
+     */
+    private void grow() {
+        int capacity = type.length * 2;
+        type = Arrays.copyOf(type, capacity);
+        xPosition = Arrays.copyOf(xPosition, capacity);
+        yPosition = Arrays.copyOf(yPosition, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        startAngle = Arrays.copyOf(startAngle, capacity);
+        extent = Arrays.copyOf(extent, capacity);
+        argb = Arrays.copyOf(argb, capacity);
+    }
+
+    /**
+     * Remove a shape.
+     *
+     * @param handle the handle of the shape to remove
+     */
+    public void remove(int handle) {
+        lock.writeLock().lock();
+        try {
+            check(handle);
+            changed(handle);
+
+            type[handle] = NONE;
+            count--;
+
+            if (freeCount == freeHandles.length) {
+                freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+            }
+            freeHandles[freeCount++] = handle;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove every shape.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(type, 0, used, NONE);
+            used = 0;
+            count = 0;
+            freeCount = 0;
+
+            // Everything that was drawn has to be painted over
+            changedLeft = Math.min(changedLeft, boundsLeft);
+            changedTop = Math.min(changedTop, boundsTop);
+            changedRight = Math.max(changedRight, boundsRight);
+            changedBottom = Math.max(changedBottom, boundsBottom);
+            boundsLeft = Integer.MAX_VALUE;
+            boundsTop = Integer.MAX_VALUE;
+            boundsRight = Integer.MIN_VALUE;
+            boundsBottom = Integer.MIN_VALUE;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Determine how many shapes there are.
+     *
+     * @return the number of shapes
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Move a shape horizontally by 'distance' pixels.
+     *
+     * @param handle the handle of the shape to move
+     * @param distance the distance to move along the x axis, positive to the
+     * right
+     */
+    public void moveHorizontal(int handle, int distance) {
+        lock.writeLock().lock();
+        try {
+            check(handle);
+            changed(handle);
+            xPosition[handle] += distance;
+            changed(handle);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Move a shape vertically by 'distance' pixels.
+     *
+     * @param handle the handle of the shape to move
+     * @param distance the distance to move along the y axis, positive down
+     */
+    public void moveVertical(int handle, int distance) {
+        lock.writeLock().lock();
+        try {
+            check(handle);
+            changed(handle);
+            yPosition[handle] += distance;
+            changed(handle);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Move a shape to a given (X, Y) coordinate
+     *
+     * @param handle the handle of the shape to move
+     * @param x the new X location to move to
+     * @param y the new Y location to move to
+     */
+    public void setPosition(int handle, int x, int y) {
+        lock.writeLock().lock();
+        try {
+            check(handle);
+            changed(handle);
+            xPosition[handle] = x;
+            yPosition[handle] = y;
+            changed(handle);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Determine the current X location of a shape
+     *
+     * @param handle the handle of the shape
+     * @return the current X location of the shape
+     */
+    public int getX(int handle) {
+        lock.readLock().lock();
+        try {
+            check(handle);
+            return xPosition[handle];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Determine the current Y location of a shape
+     *
+     * @param handle the handle of the shape
+     * @return the current Y location of the shape
+     */
+    public int getY(int handle) {
+        lock.readLock().lock();
+        try {
+            check(handle);
+            return yPosition[handle];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Change the size of a circle or arc, or make a rectangle or triangle
+     * square.
+     *
+     * @param handle the handle of the shape to change
+     * @param newSize the new diameter, or width and height
+     */
+    public void changeSize(int handle, int newSize) {
+        changeSize(handle, newSize, newSize);
+    }
+
+    /**
+     * Change the size of a rectangle or triangle.
+     *
+     * @param handle the handle of the shape to change
+     * @param newHeight the new height of the shape
+     * @param newWidth the new width of the shape
+     */
+    public void changeSize(int handle, int newHeight, int newWidth) {
+        lock.writeLock().lock();
+        try {
+            check(handle);
+            changed(handle);
+            width[handle] = newWidth;
+            height[handle] = newHeight;
+            changed(handle);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Change the angles of an arc.
+     *
+     * @param handle the handle of the arc to change
+     * @param arcStartAngle the angle the arc sweep starts at
+     * @param arcEndAngle the angle the arc sweep ends at
+     */
+    public void changeArc(int handle, int arcStartAngle, int arcEndAngle) {
+        lock.writeLock().lock();
+        try {
+            check(handle);
+            startAngle[handle] = arcStartAngle;
+            extent[handle] = arcExtent(arcStartAngle, arcEndAngle);
+            changed(handle);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Change the color of a shape.
+     *
+     * @param handle the handle of the shape to change
+     * @param newColor a string naming the new color, as for Canvas.getColor
+     */
+    public void changeColor(int handle, String newColor) {
+        changeColor(handle, Canvas.getColor(newColor).getRGB());
+    }
+
+    /**
+     * Change the color of a shape.
+     *
+     * @param handle the handle of the shape to change
+     * @param newColor the new color as alpha, red, green and blue bytes
+     */
+    public void changeColor(int handle, int newColor) {
+        lock.writeLock().lock();
+        try {
+            check(handle);
+            argb[handle] = newColor;
+            changed(handle);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hold off drawing, and other threads' changes, while a long run of
+     * changes is made, such as loading a scene. Each call must be matched by
+     * a call to endChanges().
+     */
+    void beginChanges() {
+        lock.writeLock().lock();
+    }
+
+    /**
+     * Finish a run of changes started with beginChanges().
+     */
+    void endChanges() {
+        lock.writeLock().unlock();
+    }
+
+    /**
+     * Determine the area all the shapes cover. It may be bigger than they
+     * need, since it only shrinks when the shapes are cleared.
+     *
+     * @return the area, which is empty if there have been no shapes
+     */
+    Rectangle getBounds() {
+        lock.readLock().lock();
+        try {
+            if (boundsLeft > boundsRight) {
+                return new Rectangle();
+            }
+            return new Rectangle(boundsLeft, boundsTop,
+                                 boundsRight - boundsLeft, boundsBottom - boundsTop);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the area covered by shapes changed since the last call, before
+     * and after they changed, and start keeping track afresh.
+     *
+     * @return the area, or null if nothing has changed
+     */
+    Rectangle takeChanges() {
+        lock.writeLock().lock();
+        try {
+            if (changedLeft > changedRight) {
+                return null;
+            }
+
+            Rectangle area = new Rectangle(changedLeft, changedTop,
+                                           changedRight - changedLeft,
+                                           changedBottom - changedTop);
+            changedLeft = Integer.MAX_VALUE;
+            changedTop = Integer.MAX_VALUE;
+            changedRight = Integer.MIN_VALUE;
+            changedBottom = Integer.MIN_VALUE;
+            return area;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add the area a shape covers to the changed area and the bounds. Must
+     * be called holding the write lock.
+     */
+    private void changed(int handle) {
+        int x = xPosition[handle];
+        int y = yPosition[handle];
+        int w = width[handle];
+        int h = height[handle];
+
+        int left = x;
+        int top = y;
+        int right = x + w;
+        int bottom = y + h;
+        if (type[handle] == TRIANGLE) {
+            int half = Math.abs(w / 2);
+            left = x - half;
+            right = x + half;
+            top = Math.min(y, y + h);
+            bottom = top + Math.abs(h);
+        }
+
+        changedLeft = Math.min(changedLeft, left);
+        changedTop = Math.min(changedTop, top);
+        changedRight = Math.max(changedRight, right);
+        changedBottom = Math.max(changedBottom, bottom);
+        boundsLeft = Math.min(boundsLeft, left);
+        boundsTop = Math.min(boundsTop, top);
+        boundsRight = Math.max(boundsRight, right);
+        boundsBottom = Math.max(boundsBottom, bottom);
+    }
+
+    /**
+     * Draw all the shapes, skipping those outside the area being drawn.
+     * Several threads may draw at once, each on its own graphics context.
+     *
+     * @param g the graphics context to draw on
+     */
+    void draw(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        int left = clip == null ? Integer.MIN_VALUE : clip.x;
+        int top = clip == null ? Integer.MIN_VALUE : clip.y;
+        int right = clip == null ? Integer.MAX_VALUE : clip.x + clip.width;
+        int bottom = clip == null ? Integer.MAX_VALUE : clip.y + clip.height;
+
+        int lastColor = 0;
+        boolean colorSet = false;
+        int[] xpoints = new int[3];
+        int[] ypoints = new int[3];
+
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < used; i++) {
+                byte shapeType = type[i];
+                if (shapeType == NONE) {
+                    continue;
+                }
+
+                int x = xPosition[i];
+                int y = yPosition[i];
+                int w = width[i];
+                int h = height[i];
+
+                // Skip shapes outside the area being drawn
+                if (shapeType == TRIANGLE) {
+                    int half = Math.abs(w / 2);
+                    int upper = Math.min(y, y + h);
+                    if (x + half < left || x - half > right
+                            || upper + Math.abs(h) < top || upper > bottom) {
+                        continue;
+                    }
+                } else if (x + w < left || x > right || y + h < top || y > bottom) {
+                    continue;
+                }
+
+                if (!colorSet || argb[i] != lastColor) {
+                    lastColor = argb[i];
+                    colorSet = true;
+                    g.setColor(color(lastColor));
+                }
+
+                switch (shapeType) {
+                    case CIRCLE:
+                        g.fillOval(x, y, w, h);
+                        break;
+                    case RECT:
+                        g.fillRect(x, y, w, h);
+                        break;
+                    case TRIANGLE:
+                        xpoints[0] = x;
+                        xpoints[1] = x + (w / 2);
+                        xpoints[2] = x - (w / 2);
+                        ypoints[0] = y;
+                        ypoints[1] = y + h;
+                        ypoints[2] = y + h;
+                        g.fillPolygon(xpoints, ypoints, 3);
+                        break;
+                    case ARC:
+                        g.fillArc(x, y, w, h, startAngle[i], extent[i]);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write every shape to a scene file, in drawing order.
+     *
+     * @param out the scene file being written
+     */
+    void save(SceneFile.Writer out) throws IOException {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < used; i++) {
+                if (type[i] != NONE) {
+                    out.shape(type[i], true, xPosition[i], yPosition[i], width[i], height[i],
+                              startAngle[i], extent[i], argb[i]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find a Color object for a packed color, reusing recent ones.
+     */
+    private Color color(int packed) {
+        int slot = (packed ^ (packed >>> 8) ^ (packed >>> 16)) & (colors.length - 1);
+        Color c = colors[slot];
+        if (c == null || c.getRGB() != packed) {
+            c = new Color(packed, true);
+            colors[slot] = c;
+        }
+        return c;
+    }
+
+    /**
+     * Make sure a handle belongs to a shape.
+     */
+    private void check(int handle) {
+        if (handle < 0 || handle >= used || type[handle] == NONE) {
+            throw new IllegalArgumentException("No shape with handle " + handle);
+        }
+    }
+
+    /**
+     * Find the angle an arc sweeps from its start and end angles.
+     */
+    private static int arcExtent(int arcStartAngle, int arcEndAngle) {
+        int sweep = (arcEndAngle - arcStartAngle) % 360;
+        if (sweep < 0) {
+            sweep += 360;
+        }
+        return sweep;
+    }
+}
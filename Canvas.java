@@ -7,19 +7,54 @@ import java.awt.Font;
 import java.awt.FontFormatException;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import javax.swing.JFrame;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.LinkedHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import javax.imageio.ImageIO;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Canvas is a class to allow for simple graphical drawing on a canvas. This is
@@ -37,35 +72,187 @@ public class Canvas {
 
     private static Canvas canvasSingleton;
 
+    // The colors that can be named in a color string
+    private static final Map<String, Color> standardColors = Map.of(
+        "red", new Color(235, 25, 25),
+        "black", Color.black,
+        "blue", new Color(30, 75, 220),
+        "cyan", new Color(30, 229, 220),
+        "brown", new Color(110, 80, 0),
+        "yellow", new Color(255, 230, 0),
+        "green", new Color(80, 160, 60),
+        "magenta", Color.magenta,
+        "white", Color.white);
+    private static final Map<String, Color> customColors = new ConcurrentHashMap<>();
+
+    // The colors already made from "#rrggbb" strings
+    private static final int MAX_HEX_COLORS = 4096;
+    private static final Map<String, Color> hexColors = new ConcurrentHashMap<>();
+
+    // A canvas that stands in for the singleton on one thread
+    private static final ThreadLocal<Canvas> threadCanvas = new ThreadLocal<>();
+
     /**
-     * Factory method to get the canvas singleton object.
+     * Factory method to get the canvas singleton object. If a canvas has
+     * been set for the current thread, that canvas is returned instead.
      *
      * @return a reference to the applications canvas
      */
     public static Canvas getCanvas() {
-        if (canvasSingleton == null) {
-            boolean headless = java.awt.GraphicsEnvironment.isHeadless();
-            canvasSingleton = new Canvas("Picture Demo", 800, 600, Color.white, headless);
+        Canvas local = threadCanvas.get();
+        if (local != null) {
+            return local;
+        }
+
+        Canvas singleton;
+        synchronized (Canvas.class) {
+            if (canvasSingleton == null) {
+                canvasSingleton = new Canvas("Picture Demo", 800, 600, Color.white,
+                        java.awt.GraphicsEnvironment.isHeadless());
+                if (canvasSingleton.frame != null) {
+                    // Closing the main window ends the program
+                    canvasSingleton.frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                }
+            }
+            singleton = canvasSingleton;
+        }
+        singleton.setVisible(true);
+        return singleton;
+    }
+
+    /**
+     * Create a new canvas, separate from the singleton. The canvas is shown
+     * in its own window unless the program is running headless. Shapes can
+     * be drawn on it with their makeVisible(Canvas) method. Closing its
+     * window only closes that window, not the whole program.
+     *
+     * Each canvas can be used from a different thread at the same time.
+     *
+     * @param title title to appear in Canvas Frame
+     * @param width the desired width for the canvas
+     * @param height the desired height for the canvas
+     * @param bgColor the desired background color of the canvas
+     * @return the new canvas
+     */
+    public static Canvas createCanvas(String title, int width, int height, Color bgColor) {
+        boolean headless = java.awt.GraphicsEnvironment.isHeadless();
+        Canvas created = new Canvas(title, width, height, bgColor, headless);
+        created.setVisible(true);
+        return created;
+    }
+
+    /**
+     * Create a canvas that is never displayed on the screen, for drawing
+     * pictures that are only saved to files.
+     *
+     * @param title title to appear under the saved picture
+     * @param width the desired width for the canvas
+     * @param height the desired height for the canvas
+     * @param bgColor the desired background color of the canvas
+     * @return the new canvas
+     */
+    public static Canvas createHeadlessCanvas(String title, int width, int height,
+                                              Color bgColor) {
+        return new Canvas(title, width, height, bgColor, true);
+    }
+
+    /**
+     * Make getCanvas() return a given canvas on the current thread, so shapes
+     * made visible on this thread are drawn on it.
+     *
+     * @param canvas the canvas for this thread, or null to go back to the
+     * singleton
+     */
+    static void setThreadCanvas(Canvas canvas) {
+        if (canvas == null) {
+            threadCanvas.remove();
+        } else {
+            threadCanvas.set(canvas);
         }
-        canvasSingleton.setVisible(true);
-        return canvasSingleton;
     }
 
     //  ----- instance part -----
     private int width;
     private int height;
-    private String title;
-    private Color backgroundColor;
-    private final Map<Object, DrawShape> shapes;
+    private volatile String title;
+    private volatile Color backgroundColor;
+    private final Map<Object, ShapeEntry> shapes;
     private boolean headless;
 
+    // A copy of the shapes in drawing order that is never changed, so it can
+    // be drawn without holding the shapes lock. It is set to null whenever
+    // shapes are added or removed, and copied again when next needed.
+    private volatile ShapeEntry[] drawList;
+
+    // Held while drawing the on-screen picture, so that only one thread
+    // draws it at a time
+    private final Object renderLock = new Object();
+
+    // For incremental repainting of the areas that changed
+    private static final int MAX_DAMAGE_AREAS = 32;
+    private final List<Rectangle> damage = new ArrayList<>();
+    private int damageArea = 0;
+    private boolean fullDamage = true;
+    private int unboundedShapes = 0;
+
+    // Layers of shapes, by number; shapes start out on layer 0
+    private final Map<Integer, Layer> layers = new TreeMap<>();
+    private final Layer baseLayer = new Layer(0);
+    private int layeredShapes = 0;
+    private BufferedImage frameImage;
+
+    // For drawing large pictures a tile at a time on several threads
+    private static final int TILE_SIZE = 256;
+    private static final int MIN_TILED_PIXELS = 1 << 20;
+    private volatile int renderThreads = Runtime.getRuntime().availableProcessors();
+
+    // For finding the shapes in an area of the canvas
+    private final ShapeGrid grid = new ShapeGrid();
+    private long nextOrder = 0;
+
+    // For drawing on a thread of its own
+    private static final int MAX_COMMANDS_PER_FRAME = 65536;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private volatile Thread renderThread;
+    private volatile boolean redrawRequested = false;
+    private final List<FrameTask> frameTasks = new CopyOnWriteArrayList<>();
+
+    // For saving pictures, reused from one save to the next
+    private final Object saveLock = new Object();
+    private final PngEncoder pngEncoder = new PngEncoder();
+    private BufferedImage saveImage;
+
+    // Recording of the frames shown, if one is being made
+    private volatile FrameRecorder recorder;
+
+    // Shapes kept in arrays rather than as separate objects
+    private BulkShapes bulkShapes;
+
+    // Counts of the shapes drawn and skipped for being off the canvas
+    private final AtomicLong shapesDrawn = new AtomicLong();
+    private final AtomicLong shapesCulled = new AtomicLong();
+
+    // Timings of drawing and saving, while metrics are on
+    private volatile RenderMetrics metrics;
+
+    // Mouse and keyboard handlers
+    private final CanvasInput input = new CanvasInput(this);
+
+    // Collidable shapes and collision handlers
+    private final Collisions collisions = new Collisions(this);
+
     // For a visible canvas
     private JFrame frame;
     private CanvasPane canvas;
-    private BufferStrategy bs;
-    private boolean paused = false;
+    // Set when the canvas is first shown, and null until then
+    private volatile BufferStrategy bs;
+    private volatile boolean paused = false;
     private boolean firstShown = false;
 
+    // For batched scene construction
+    private int batchDepth = 0;
+    private boolean batchDirty = false;
+
     /**
      * Create a Canvas.
      *
@@ -84,10 +271,11 @@ public class Canvas {
         this.backgroundColor = bgColor;
 
         shapes = new LinkedHashMap<>(1000);
+        layers.put(0, baseLayer);
 
         if (!headless) {
             frame = new JFrame();
-            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 
             canvas = new CanvasPane();
             frame.add(canvas);
@@ -97,6 +285,13 @@ public class Canvas {
 
             frame.pack();
 
+            // Queue mouse and key events for the input's own thread
+            InputListener listener = new InputListener();
+            canvas.addMouseListener(listener);
+            canvas.addMouseMotionListener(listener);
+            canvas.addKeyListener(listener);
+            frame.addKeyListener(listener);
+
             // Listen for Ctrl-S to save the picture
             frame.addKeyListener(new KeyAdapter() {
                 @Override
@@ -135,19 +330,22 @@ public class Canvas {
                             }
                         }
 
-                        try {
-                            saveToFile(file);
-
-                            // Inform the user of success in saving.
-                            JOptionPane.showMessageDialog(frame,
-                                "Image saved to: " + file, "File Saved",
-                                JOptionPane.INFORMATION_MESSAGE);
-                        } catch (java.io.IOException exc) {
-                            // Alert the user if there is an error.
-                            JOptionPane.showMessageDialog(frame,
-                                "Could not save image to: " + file, "File Error",
-                                JOptionPane.ERROR_MESSAGE);
-                        }
+                        // Save in the background so the window keeps responding
+                        File saveFile = file;
+                        saveToFileAsync(saveFile).whenComplete((saved, exc) ->
+                            SwingUtilities.invokeLater(() -> {
+                                if (exc == null) {
+                                    // Inform the user of success in saving.
+                                    JOptionPane.showMessageDialog(frame,
+                                        "Image saved to: " + saveFile, "File Saved",
+                                        JOptionPane.INFORMATION_MESSAGE);
+                                } else {
+                                    // Alert the user if there is an error.
+                                    JOptionPane.showMessageDialog(frame,
+                                        "Could not save image to: " + saveFile, "File Error",
+                                        JOptionPane.ERROR_MESSAGE);
+                                }
+                            }));
                     }
                 }
             });
@@ -172,14 +370,15 @@ public class Canvas {
                 Dimension size = canvas.getSize();
 
                 canvas.createBufferStrategy(2);
-                bs = canvas.getBufferStrategy();
+                BufferStrategy strategy = canvas.getBufferStrategy();
 
-                Graphics graphic = bs.getDrawGraphics();
+                Graphics graphic = strategy.getDrawGraphics();
                 graphic.setColor(backgroundColor);
                 graphic.fillRect(0, 0, size.width, size.height);
                 graphic.setColor(Color.black);
                 graphic.dispose();
-                bs.show();
+                strategy.show();
+                bs = strategy;
             }
             frame.setVisible(visible);
         }
@@ -214,23 +413,158 @@ public class Canvas {
     }
 
     /**
-     * Draw a given shape onto the canvas.
+     * Start a batch of changes to the canvas. Until the matching endBatch()
+     * call, adding or removing shapes and calling redraw() do not repaint the
+     * canvas; the canvas is redrawn once when the outermost batch ends.
+     * Batches may be nested.
+     */
+    public void beginBatch() {
+        synchronized (shapes) {
+            batchDepth++;
+        }
+    }
+
+    /**
+     * Finish a batch of changes started with beginBatch(). When the outermost
+     * batch ends, the canvas is redrawn once if anything changed during the
+     * batch.
+     *
+     * @throws IllegalStateException if no batch is in progress
+     */
+    public void endBatch() {
+        boolean changed;
+
+        synchronized (shapes) {
+            if (batchDepth == 0) {
+                throw new IllegalStateException("No batch in progress");
+            }
+
+            batchDepth--;
+            changed = (batchDepth == 0) && batchDirty;
+            if (changed) {
+                batchDirty = false;
+            }
+        }
+
+        if (changed && !paused) {
+            redraw();
+        }
+    }
+
+    /**
+     * Note that the batch in progress, if any, has changes to draw when it
+     * ends. Called holding the shapes lock.
+     */
+    private void batchChanged() {
+        if (batchDepth > 0) {
+            batchDirty = true;
+        }
+    }
+
+    /**
+     * Make a batch of changes to the canvas, redrawing it only once when the
+     * changes are done. The batch is ended even if the changes throw an
+     * exception.
+     *
+     * @param changes the code that adds, removes or moves shapes
+     */
+    public void batch(Runnable changes) {
+        beginBatch();
+        try {
+            changes.run();
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Is a batch of changes in progress
+     */
+    public boolean isBatching() {
+        synchronized (shapes) {
+            return batchDepth > 0;
+        }
+    }
+
+    /**
+     * Draw a given shape onto the canvas. Since the canvas can't tell where
+     * this shape is drawn, any redraw repaints the whole canvas while it is
+     * showing.
      *
      * @param referenceObject an object to define identity for this shape
      * @param shapeFunction a function that draws the shape on a graphics
      * context
      */
     public void add(Object referenceObject, DrawShape shapeFunction) {
+        add(referenceObject, shapeFunction, null);
+    }
+
+    /**
+     * Draw a given shape onto the canvas. The shape should call update()
+     * whenever it changes so that the canvas can repaint just the area that
+     * changed.
+     *
+     * @param referenceObject an object to define identity for this shape
+     * @param shapeFunction a function that draws the shape on a graphics
+     * context
+     * @param boundsFunction a function that finds the area the shape covers,
+     * or null if that isn't known
+     */
+    public void add(Object referenceObject, DrawShape shapeFunction,
+                    ShapeBounds boundsFunction) {
+        add(referenceObject, shapeFunction, boundsFunction, null);
+    }
+
+    /**
+     * Draw a given shape onto the canvas, with its exact outline so that it
+     * can be picked out at a point with pickShape(). The shape should call
+     * update() whenever it changes.
+     *
+     * @param referenceObject an object to define identity for this shape
+     * @param shapeFunction a function that draws the shape on a graphics
+     * context
+     * @param boundsFunction a function that finds the area the shape covers,
+     * or null if that isn't known
+     * @param outlineFunction a function that finds the shape's outline, or
+     * null to treat the whole of its bounds as the shape
+     */
+    public void add(Object referenceObject, DrawShape shapeFunction,
+                    ShapeBounds boundsFunction, ShapeOutline outlineFunction) {
+        addEntry(referenceObject, shapeFunction, boundsFunction, outlineFunction);
+
+        if (!paused) {
+            RenderMetrics addMetrics = metrics;
+            if (addMetrics != null) {
+                addMetrics.redrawFromAdd();
+            }
+            redraw();
+        }
+    }
+
+    /**
+     * Put a shape in the shapes map and the grid.
+     */
+    private void addEntry(Object referenceObject, DrawShape shapeFunction,
+                          ShapeBounds boundsFunction, ShapeOutline outlineFunction) {
+        long requested = lockRequested();
         synchronized (shapes) {
+            lockAcquired(requested);
             if (shapes.containsKey(referenceObject)) {
                 throw new IllegalArgumentException("Shape already added to canvas");
             }
 
-            shapes.put(referenceObject, shapeFunction);
-        }
+            ShapeEntry entry = new ShapeEntry(referenceObject, shapeFunction, boundsFunction,
+                                              outlineFunction, nextOrder++, baseLayer);
+            shapes.put(referenceObject, entry);
+            grid.insert(entry);
 
-        if (!paused) {
-            redraw();
+            if (boundsFunction == null) {
+                unboundedShapes++;
+                baseLayer.unbounded++;
+            }
+            damage(entry.bounds);
+            damageLayer(baseLayer, entry.bounds);
+            drawList = null;
         }
     }
 
@@ -241,212 +575,2172 @@ public class Canvas {
      */
     public void remove(Object referenceObject) {
 
+        long requested = lockRequested();
         synchronized (shapes) {
+            lockAcquired(requested);
             if (!shapes.containsKey(referenceObject)) {
                 throw new IllegalArgumentException("Shape not added to canvas");
             }
 
-            shapes.remove(referenceObject);
+            ShapeEntry entry = shapes.remove(referenceObject);
+            grid.remove(entry, entry.bounds);
+
+            Layer layer = entry.layer;
+            if (entry.boundsFunction == null) {
+                unboundedShapes--;
+                layer.unbounded--;
+            }
+            if (layer != baseLayer) {
+                layeredShapes--;
+            }
+            damage(entry.bounds);
+            damageLayer(layer, entry.bounds);
+            drawList = null;
         }
 
         if (!paused) {
+            RenderMetrics removeMetrics = metrics;
+            if (removeMetrics != null) {
+                removeMetrics.redrawFromRemove();
+            }
             redraw();
         }
     }
 
     /**
-     * Change the name of this canvas
+     * Tell the canvas that a shape has moved or changed its appearance, so
+     * that the area it covered and the area it now covers are repainted on
+     * the next redraw.
      *
-     * @param title the new name for the canvas
+     * @param referenceObject the shape object that changed
      */
-    public void setTitle(String title) {
-        this.title = title;
-        
-        if (!headless) {
-            frame.setTitle(title);
+    public void update(Object referenceObject) {
+        long requested = lockRequested();
+        synchronized (shapes) {
+            lockAcquired(requested);
+            ShapeEntry entry = shapes.get(referenceObject);
+            if (entry == null) {
+                throw new IllegalArgumentException("Shape not added to canvas");
+            }
+
+            Rectangle oldBounds = entry.bounds;
+            entry.updateBounds();
+            grid.move(entry, oldBounds);
+
+            damage(oldBounds);
+            damage(entry.bounds);
+            damageLayer(entry.layer, oldBounds);
+            damageLayer(entry.layer, entry.bounds);
         }
     }
 
     /**
-     * Set the canvas's background color
+     * Put a shape on a layer. Layers are drawn in order of their numbers,
+     * so shapes on higher layers are drawn on top of those on lower ones;
+     * within a layer, shapes are drawn in the order they were added. Shapes
+     * start out on layer 0, and go back to it if they are removed and added
+     * again.
      *
-     * @param bgColor the new background color for the canvas.
+     * @param referenceObject the shape to move
+     * @param layer the number of the layer to put it on
      */
-    public void setBackgroundColor(Color bgColor) {
-        this.backgroundColor = bgColor;
+    public void setLayer(Object referenceObject, int layer) {
+        long requested = lockRequested();
+        synchronized (shapes) {
+            lockAcquired(requested);
+            ShapeEntry entry = shapes.get(referenceObject);
+            if (entry == null) {
+                throw new IllegalArgumentException("Shape not added to canvas");
+            }
+
+            Layer oldLayer = entry.layer;
+            Layer newLayer = layer(layer);
+            if (oldLayer == newLayer) {
+                return;
+            }
+
+            if (entry.boundsFunction == null) {
+                oldLayer.unbounded--;
+                newLayer.unbounded++;
+            }
+            if (oldLayer == baseLayer) {
+                layeredShapes++;
+            } else if (newLayer == baseLayer) {
+                layeredShapes--;
+            }
+            entry.layer = newLayer;
+
+            damage(entry.bounds);
+            damageLayer(oldLayer, entry.bounds);
+            damageLayer(newLayer, entry.bounds);
+            drawList = null;
+        }
+
+        if (!paused) {
+            redraw();
+        }
     }
 
     /**
-     * Set the canvas's background color
+     * Find the layer a shape is on.
      *
-     * @param bgColor the new background color for the canvas.
+     * @param referenceObject the shape to look for
+     * @return the number of the shape's layer
      */
-    public void setBackgroundColor(String bgColor) {
-        setBackgroundColor(getColor(bgColor));
+    public int getLayer(Object referenceObject) {
+        synchronized (shapes) {
+            ShapeEntry entry = shapes.get(referenceObject);
+            if (entry == null) {
+                throw new IllegalArgumentException("Shape not added to canvas");
+            }
+            return entry.layer.number;
+        }
     }
 
     /**
-     * Wait for a specified number of milliseconds before finishing. This
-     * provides an easy way to specify a small delay which can be used when
-     * producing animations.
+     * Choose whether a layer is kept as a picture. The shapes on a cached
+     * layer are drawn into a picture of their own, which is copied onto the
+     * canvas each frame instead of drawing the shapes again. The picture is
+     * only redrawn where a shape on the layer is added, removed or updated,
+     * so caching suits layers of scenery that seldom change.
      *
-     * @param milliseconds the number
+     * Shapes that change without telling the canvas, such as bulk shapes,
+     * don't show their changes on a cached layer until update() is called
+     * for them.
+     *
+     * @param layer the number of the layer
+     * @param cached true to keep the layer as a picture
      */
-    public void wait(int milliseconds) {
-        try {
-            Thread.sleep(milliseconds);
-        } catch (InterruptedException e) {
-            // ignoring exceptions at the moment
+    public void setLayerCached(int layer, boolean cached) {
+        Layer cachedLayer;
+        long requested = lockRequested();
+        synchronized (shapes) {
+            lockAcquired(requested);
+            cachedLayer = layer(layer);
+            if (cachedLayer.cached == cached) {
+                return;
+            }
+
+            cachedLayer.cached = cached;
+            cachedLayer.allDirty = true;
+            cachedLayer.dirty = null;
+            fullDamage = true;
+            batchChanged();
+        }
+
+        // Let go of the picture once it is no longer needed
+        synchronized (cachedLayer) {
+            synchronized (shapes) {
+                if (!cachedLayer.cached) {
+                    cachedLayer.image = null;
+                }
+            }
         }
     }
 
     /**
-     * Redraw all shapes currently on the Canvas.
+     * Determine if a layer is kept as a picture.
+     *
+     * @param layer the number of the layer
+     * @return true if the layer is cached
      */
-    public void redraw() {
-        if (!headless) {
-            // Draw the graphics onscreen
-            Graphics buffer = bs.getDrawGraphics();
-            redraw(buffer);
-            buffer.dispose();
-
-            // Display the predrawn graphics
-            bs.show();
+    public boolean isLayerCached(int layer) {
+        synchronized (shapes) {
+            Layer cachedLayer = layers.get(layer);
+            return cachedLayer != null && cachedLayer.cached;
         }
     }
 
     /**
-     * Redraw all shapes onto a graphics context
+     * Find a layer, making it if it doesn't exist yet. Must be called
+     * holding the shapes lock.
      */
-    private void redraw(Graphics buffer) {
-        synchronized (shapes) {
-            buffer.setColor(backgroundColor);
-            buffer.fillRect(0, 0, this.width, this.height);
-
-            shapes.forEach((i, shape) -> {
-                    shape.draw(buffer);
-                });
+    private Layer layer(int number) {
+        Layer layer = layers.get(number);
+        if (layer == null) {
+            layer = new Layer(number);
+            layers.put(number, layer);
         }
+        return layer;
     }
 
     /**
-     * Erase the whole canvas.
+     * Record an area of a cached layer's picture that needs to be redrawn.
+     * Must be called holding the shapes lock.
+     *
+     * @param layer the layer that changed
+     * @param area the changed area, or null if it isn't known
      */
-    public void erase() {
-        synchronized (shapes) {
-            shapes.clear();
-            if (!headless) {
-                Graphics buffer = bs.getDrawGraphics();
-                buffer.setColor(backgroundColor);
-                Dimension size = canvas.getSize();
-                buffer.fillRect(0, 0, size.width, size.height);
+    private void damageLayer(Layer layer, Rectangle area) {
+        if (!layer.cached || layer.allDirty) {
+            return;
+        }
 
-                buffer.dispose();
-                bs.show();
-            }
+        // Shapes with no bounds can't be found by area, so redraw them all
+        if (area == null || layer.unbounded > 0) {
+            layer.allDirty = true;
+            layer.dirty = null;
+            return;
         }
+        if (area.isEmpty()) {
+            return;
+        }
+
+        Rectangle changed = new Rectangle(area);
+        changed.grow(1, 1);
+        layer.dirty = layer.dirty == null ? changed : layer.dirty.union(changed);
     }
 
     /**
-     * Transform a color string into a usable color
-     *
-     * @param colorString the new color for the foreground of the Canvas
+     * Get the cached layers, in drawing order. Must be called holding the
+     * shapes lock.
      */
-    public static Color getColor(String colorString) {
-        Color c;
-
-        if (colorString.equals("red")) {
-            c = new Color(235, 25, 25);
-        } else if (colorString.equals("black")) {
-            c = Color.black;
-        } else if (colorString.equals("blue")) {
-            c = new Color(30, 75, 220);
-        } else if (colorString.equals("cyan")) {
-            c = new Color(30, 229, 220);
-        } else if (colorString.equals("brown")) {
-            c = new Color(110, 80, 0);
-        } else if (colorString.equals("yellow")) {
-            c = new Color(255, 230, 0);
-        } else if (colorString.equals("green")) {
-            c = new Color(80, 160, 60);
-        } else if (colorString.equals("magenta")) {
-            c = Color.magenta;
-        } else if (colorString.equals("white")) {
-            c = Color.white;
-        } else if (colorString.startsWith("#") && colorString.length() == 7) {
-            int red = Integer.parseInt(colorString.substring(1, 3), 16);
-            int green = Integer.parseInt(colorString.substring(3, 5), 16);
-            int blue = Integer.parseInt(colorString.substring(5, 7), 16);
-            c = new Color(red, green, blue);
-        } else {
-            c = Color.black;
+    private Layer[] cachedLayers() {
+        List<Layer> cached = new ArrayList<>();
+        for (Layer layer : layers.values()) {
+            if (layer.cached) {
+                cached.add(layer);
+            }
         }
-
-        return c;
+        return cached.toArray(new Layer[0]);
     }
 
     /**
-     * Save the current canvas to the file
-     * 
-     * @param file the File object to save to.
-     * 
-     * @return true if the file saved correctly, false if the save failed.
+     * Determine if any shapes with no bounds are on layers that aren't
+     * cached. Must be called holding the shapes lock.
      */
-    public void saveToFile(File file) throws IOException {
-        Font font;
+    private boolean hasUncachedUnbounded() {
+        if (unboundedShapes == 0) {
+            return false;
+        }
 
-        try {
-            InputStream fnt_stream = getClass().getResourceAsStream("Caveat.ttf");
-            Font myFont = Font.createFont(Font.TRUETYPE_FONT, fnt_stream);
-            font = myFont.deriveFont(Font.BOLD, 20f);
-        } catch (FontFormatException | IOException ex) {
-            // Use the default font if an error occurs
-            font = new Font("SansSerif", Font.PLAIN, 20);
+        for (Layer layer : layers.values()) {
+            if (!layer.cached && layer.unbounded > 0) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        BufferedImage buffer = new BufferedImage(1,1,
-            BufferedImage.TYPE_INT_RGB);
-        Graphics bgc = buffer.getGraphics();
+    /**
+     * Bring the picture of a cached layer up to date, redrawing the parts
+     * where its shapes have changed.
+     */
+    private void refreshLayer(Layer layer) {
+        synchronized (layer) {
+            Rectangle area;
+            List<ShapeEntry> members = new ArrayList<>();
 
-        FontMetrics fm = bgc.getFontMetrics(font);
-        int fontheight = fm.getHeight();
+            synchronized (shapes) {
+                if (!layer.cached) {
+                    return;
+                }
+                if (layer.image == null) {
+                    layer.allDirty = true;
+                }
 
-        // Create a buffered image from the picture
-        buffer = new BufferedImage(width, height + fontheight + 2,
-                BufferedImage.TYPE_INT_RGB);
-        bgc = buffer.createGraphics();
-        bgc.setColor(Color.white);
-        bgc.fillRect(0, 0, width, height + fontheight + 2);
+                if (layer.allDirty) {
+                    area = new Rectangle(0, 0, width, height);
+                    for (ShapeEntry entry : drawList()) {
+                        if (entry.layer == layer) {
+                            members.add(entry);
+                        }
+                    }
+                } else if (layer.dirty != null) {
+                    area = layer.dirty.intersection(new Rectangle(0, 0, width, height));
+                    for (ShapeEntry entry : grid.query(overlapping(area))) {
+                        if (entry.layer == layer) {
+                            members.add(entry);
+                        }
+                    }
+                } else {
+                    return;
+                }
+                layer.allDirty = false;
+                layer.dirty = null;
+            }
 
-        redraw(bgc);
+            if (layer.image == null) {
+                layer.image = new BufferedImage(width, height,
+                        BufferedImage.TYPE_INT_ARGB_PRE);
+            }
+            if (area.isEmpty()) {
+                return;
+            }
 
-        bgc.setColor(Color.black);
-        bgc.setFont(font);
-        bgc.drawString(this.title, 0, height + fm.getAscent() + 1);
+            Graphics2D g = layer.image.createGraphics();
+            g.setClip(area);
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(area.x, area.y, area.width, area.height);
+            g.setComposite(AlphaComposite.SrcOver);
+            for (ShapeEntry entry : members) {
+                entry.drawFunction.draw(g);
+            }
+            g.dispose();
+            shapesDrawn.addAndGet(members.size());
+        }
+    }
 
-        // Save the image
-        ImageIO.write(buffer, "png", file);
+    /**
+     * Copy the picture of a cached layer onto a graphics context.
+     */
+    private void drawLayer(Layer layer, Graphics buffer) {
+        synchronized (layer) {
+            if (layer.image != null) {
+                buffer.drawImage(layer.image, 0, 0, null);
+            }
+        }
     }
 
     /**
-     * ***********************************************************************
-     * Inner interface DrawShape - a functional interface that allows a shape to
-     * provide the canvas with a method to draw the shape
+     * Get the bulk shapes on this canvas, for drawing large numbers of
+     * shapes without an object for each one. The bulk shapes are drawn at
+     * the point in the picture where this method was first called.
+     *
+     * @return the canvas's bulk shapes
      */
-    public interface DrawShape {
-        public void draw(Graphics g);
+    public BulkShapes getBulkShapes() {
+        synchronized (shapes) {
+            if (bulkShapes == null) {
+                bulkShapes = new BulkShapes(1024);
+                addEntry(bulkShapes, bulkShapes::draw, bulkShapes::getBounds, null);
+            }
+            return bulkShapes;
+        }
     }
 
     /**
-     * **********************************************************************
-     * Inner class CanvasPane - the actual canvas component contained in the
-     * Canvas frame.
+     * Get the reference objects of all the shapes on the canvas, including
+     * the bulk shapes if they have been used.
+     *
+     * @return the reference objects, from the bottom of the picture to the
+     * top
      */
-    private class CanvasPane extends java.awt.Canvas {
-        static final long serialVersionUID = 1;
+    List<Object> getShapeObjects() {
+        ShapeEntry[] list = drawList();
+        List<Object> objects = new ArrayList<>(list.length);
+        for (ShapeEntry entry : list) {
+            objects.add(entry.referenceObject);
+        }
+        return objects;
+    }
+
+    /**
+     * Find the shapes whose bounds overlap an area of the canvas. Shapes
+     * added without a bounds function are never found.
+     *
+     * @param area the area to look in
+     * @return the shapes' reference objects, from the bottom of the picture
+     * to the top
+     */
+    public List<Object> findShapes(Rectangle area) {
+        synchronized (shapes) {
+            List<Object> found = new ArrayList<>();
+            for (ShapeEntry entry : grid.query(area)) {
+                found.add(entry.referenceObject);
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Find the shapes whose bounds contain a point on the canvas. Shapes
+     * added without a bounds function are never found.
+     *
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @return the shapes' reference objects, from the bottom of the picture
+     * to the top
+     */
+    public List<Object> findShapes(int x, int y) {
+        return findShapes(new Rectangle(x, y, 1, 1));
+    }
+
+    /**
+     * Find the shape drawn on top at a point on the canvas, such as the
+     * point under the mouse. Unlike findShapes(), this uses each shape's
+     * exact outline, so a point just outside a circle, or in the gap of an
+     * arc, doesn't pick it. Shapes added without an outline function are
+     * picked anywhere in their bounds; shapes added without a bounds
+     * function are never picked.
+     *
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @return the shape's reference object, or null if there is no shape
+     * at the point
+     */
+    public Object pickShape(int x, int y) {
+        synchronized (shapes) {
+            ShapeEntry entry = grid.topAt(x, y);
+            return entry == null ? null : entry.referenceObject;
+        }
+    }
+
+    /**
+     * Find all the shapes drawn at a point on the canvas, using each
+     * shape's exact outline as pickShape() does.
+     *
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @return the shapes' reference objects, from the bottom of the picture
+     * to the top
+     */
+    public List<Object> pickShapes(int x, int y) {
+        synchronized (shapes) {
+            List<Object> found = new ArrayList<>();
+            for (ShapeEntry entry : grid.query(new Rectangle(x, y, 1, 1))) {
+                if (entry.contains(x, y)) {
+                    found.add(entry.referenceObject);
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Find the shapes whose exact outlines overlap an area of the canvas,
+     * such as the area dragged out to select shapes.
+     *
+     * @param area the area to look in
+     * @return the shapes' reference objects, from the bottom of the picture
+     * to the top
+     */
+    public List<Object> pickShapes(Rectangle area) {
+        synchronized (shapes) {
+            List<Object> found = new ArrayList<>();
+            for (ShapeEntry entry : grid.query(area)) {
+                if (entry.intersects(area)) {
+                    found.add(entry.referenceObject);
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Have a handler told about the mouse on a shape: being pressed,
+     * released, clicked, dragged and moved over it, and entering and
+     * leaving it. Handlers run on a thread of their own, not the window's,
+     * so they can take their time without holding up the picture.
+     *
+     * @param referenceObject the object that identifies the shape
+     * @param handler the handler to run for each mouse event
+     */
+    public void addMouseHandler(Object referenceObject, CanvasInput.MouseHandler handler) {
+        if (referenceObject == null || handler == null) {
+            throw new IllegalArgumentException("Shape and handler must not be null");
+        }
+        input.addMouseHandler(referenceObject, handler);
+    }
+
+    /**
+     * Stop a handler being told about the mouse on a shape.
+     *
+     * @param referenceObject the object that identifies the shape
+     * @param handler the handler to remove
+     */
+    public void removeMouseHandler(Object referenceObject, CanvasInput.MouseHandler handler) {
+        input.removeMouseHandler(referenceObject, handler);
+    }
+
+    /**
+     * Have a handler told about the mouse anywhere on the canvas, after
+     * the handlers of the shape it is on.
+     *
+     * @param handler the handler to run for each mouse event
+     */
+    public void addMouseHandler(CanvasInput.MouseHandler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler must not be null");
+        }
+        input.addMouseHandler(handler);
+    }
+
+    /**
+     * Stop a handler being told about the mouse on the canvas.
+     *
+     * @param handler the handler to remove
+     */
+    public void removeMouseHandler(CanvasInput.MouseHandler handler) {
+        input.removeMouseHandler(handler);
+    }
+
+    /**
+     * Have a handler told about keys being pressed, released and typed
+     * while the canvas's window has the focus.
+     *
+     * @param handler the handler to run for each key event
+     */
+    public void addKeyHandler(CanvasInput.KeyHandler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler must not be null");
+        }
+        input.addKeyHandler(handler);
+    }
+
+    /**
+     * Stop a handler being told about the keyboard.
+     *
+     * @param handler the handler to remove
+     */
+    public void removeKeyHandler(CanvasInput.KeyHandler handler) {
+        input.removeKeyHandler(handler);
+    }
+
+    /**
+     * Make a shape take part in collisions or not. Collidable shapes are
+     * checked for overlapping each other once a frame, while there are
+     * collision handlers, and whenever checkCollisions() is called.
+     *
+     * @param referenceObject the object that identifies the shape
+     * @param collidable true if the shape should collide with others
+     */
+    public void setCollidable(Object referenceObject, boolean collidable) {
+        if (referenceObject == null) {
+            throw new IllegalArgumentException("Shape must not be null");
+        }
+        collisions.setCollidable(referenceObject, collidable);
+    }
+
+    /**
+     * Determine if a shape takes part in collisions.
+     *
+     * @param referenceObject the object that identifies the shape
+     */
+    public boolean isCollidable(Object referenceObject) {
+        return collisions.isCollidable(referenceObject);
+    }
+
+    /**
+     * Have a handler told about every collision between collidable shapes.
+     * While there are handlers, collisions are checked once a frame by the
+     * render thread or an animation, and the handlers' changes are drawn
+     * in the same frame.
+     *
+     * @param handler the handler to run for each pair of shapes that
+     * overlap
+     */
+    public void addCollisionHandler(Collisions.Handler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler must not be null");
+        }
+        collisions.addHandler(handler);
+    }
+
+    /**
+     * Stop a handler being told about collisions.
+     *
+     * @param handler the handler to remove
+     */
+    public void removeCollisionHandler(Collisions.Handler handler) {
+        collisions.removeHandler(handler);
+    }
+
+    /**
+     * Have a handler told about the collisions of one shape, which is made
+     * collidable.
+     *
+     * @param referenceObject the object that identifies the shape
+     * @param handler the handler to run for each shape it overlaps
+     */
+    public void addCollisionHandler(Object referenceObject, Collisions.Handler handler) {
+        if (referenceObject == null || handler == null) {
+            throw new IllegalArgumentException("Shape and handler must not be null");
+        }
+        collisions.addHandler(referenceObject, handler);
+    }
+
+    /**
+     * Stop a handler being told about the collisions of a shape. The shape
+     * stays collidable.
+     *
+     * @param referenceObject the object that identifies the shape
+     * @param handler the handler to remove
+     */
+    public void removeCollisionHandler(Object referenceObject, Collisions.Handler handler) {
+        collisions.removeHandler(referenceObject, handler);
+    }
+
+    /**
+     * Find the collidable shapes on the canvas that overlap each other,
+     * and run the collision handlers for them.
+     *
+     * @return the pairs of shapes that overlap, in the order the shapes
+     * are drawn
+     */
+    public List<Collisions.Contact> checkCollisions() {
+        return collisions.check();
+    }
+
+    /**
+     * Check for collisions at the start of a frame, if there are handlers
+     * to tell about them.
+     */
+    void checkFrameCollisions() {
+        if (collisions.hasHandlers()) {
+            collisions.check();
+        }
+    }
+
+    /**
+     * Get the collisions of this canvas, which count the shapes and pairs
+     * the last check looked at.
+     *
+     * @return the collisions
+     */
+    public Collisions getCollisions() {
+        return collisions;
+    }
+
+    /**
+     * Find the entries of the shapes on the canvas out of a set of
+     * reference objects, leaving out those that aren't on it.
+     *
+     * @param referenceObjects the objects that identify the shapes
+     * @return the entries found, from the bottom of the picture to the top
+     */
+    List<ShapeEntry> findEntries(Set<Object> referenceObjects) {
+        ShapeEntry[] list = drawList();
+        List<ShapeEntry> found = new ArrayList<>(Math.min(referenceObjects.size(), list.length));
+        if (referenceObjects.size() < list.length / 8) {
+            // Look up the few shapes wanted rather than going through them all
+            long requested = lockRequested();
+            synchronized (shapes) {
+                lockAcquired(requested);
+                for (Object referenceObject : referenceObjects) {
+                    ShapeEntry entry = shapes.get(referenceObject);
+                    if (entry != null) {
+                        found.add(entry);
+                    }
+                }
+            }
+            found.sort(ShapeEntry.DRAW_ORDER);
+        } else {
+            for (ShapeEntry entry : list) {
+                if (referenceObjects.contains(entry.referenceObject)) {
+                    found.add(entry);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Get the input of this canvas, which counts the mouse and keyboard
+     * events handled.
+     *
+     * @return the input
+     */
+    public CanvasInput getInput() {
+        return input;
+    }
+
+    /**
+     * Determine how many shapes have been drawn since the counts were last
+     * reset.
+     *
+     * @return the number of shapes drawn
+     */
+    public long getShapesDrawn() {
+        return shapesDrawn.get();
+    }
+
+    /**
+     * Determine how many shapes have been skipped because they were entirely
+     * off the canvas since the counts were last reset.
+     *
+     * @return the number of shapes skipped
+     */
+    public long getShapesCulled() {
+        return shapesCulled.get();
+    }
+
+    /**
+     * Reset the counts of shapes drawn and skipped to zero.
+     */
+    public void resetShapeCounts() {
+        shapesDrawn.set(0);
+        shapesCulled.set(0);
+    }
+
+    /**
+     * Turn on metrics for this canvas, which record how long drawing and
+     * saving take. The metrics are also made available to JMX consoles.
+     *
+     * @return the metrics, which are the same ones if they were already on
+     */
+    public RenderMetrics enableMetrics() {
+        RenderMetrics enabled;
+        synchronized (shapes) {
+            if (metrics != null) {
+                return metrics;
+            }
+            enabled = new RenderMetrics(title);
+            metrics = enabled;
+        }
+
+        enabled.register();
+        return enabled;
+    }
+
+    /**
+     * Turn off metrics for this canvas, so nothing more is recorded.
+     */
+    public void disableMetrics() {
+        RenderMetrics disabled;
+        synchronized (shapes) {
+            disabled = metrics;
+            metrics = null;
+        }
+
+        if (disabled != null) {
+            disabled.close();
+        }
+    }
+
+    /**
+     * Get the metrics for this canvas.
+     *
+     * @return the metrics, or null if they are off
+     */
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Note when the shapes lock is asked for, if metrics are on.
+     *
+     * @return the time, or 0 if metrics are off
+     */
+    private long lockRequested() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Record how long it took to get the shapes lock, if metrics are on.
+     * Called just after the lock is taken.
+     *
+     * @param requested the time from lockRequested()
+     */
+    private void lockAcquired(long requested) {
+        RenderMetrics lockMetrics = metrics;
+        if (lockMetrics != null && requested != 0) {
+            lockMetrics.lockWaited(System.nanoTime() - requested);
+        }
+    }
+
+    /**
+     * Change the name of this canvas
+     *
+     * @param title the new name for the canvas
+     */
+    public void setTitle(String title) {
+        this.title = title;
+        
+        if (!headless) {
+            frame.setTitle(title);
+        }
+    }
+
+    /**
+     * Get the canvas's background color
+     *
+     * @return the background color of the canvas
+     */
+    public Color getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    /**
+     * Set the canvas's background color
+     *
+     * @param bgColor the new background color for the canvas.
+     */
+    public void setBackgroundColor(Color bgColor) {
+        synchronized (shapes) {
+            this.backgroundColor = bgColor;
+            fullDamage = true;
+            batchChanged();
+        }
+    }
+
+    /**
+     * Set the canvas's background color
+     *
+     * @param bgColor the new background color for the canvas.
+     */
+    public void setBackgroundColor(String bgColor) {
+        setBackgroundColor(getColor(bgColor));
+    }
+
+    /**
+     * Wait for a specified number of milliseconds before finishing. This
+     * provides an easy way to specify a small delay which can be used when
+     * producing animations. For smoother animations, see animate().
+     *
+     * @param milliseconds the number
+     */
+    public void wait(int milliseconds) {
+        try {
+            Thread.sleep(milliseconds);
+        } catch (InterruptedException e) {
+            // ignoring exceptions at the moment
+        }
+    }
+
+    /**
+     * Create an animation that runs update code at a steady rate and redraws
+     * the canvas after each round of updates. Call run() or start() on the
+     * animation to begin.
+     *
+     * @param updatesPerSecond how many times a second to run the update code
+     * @param update the code that moves the shapes one step
+     * @return the animation
+     */
+    public Animation animate(int updatesPerSecond, Animation.Update update) {
+        return new Animation(this, updatesPerSecond, update, null);
+    }
+
+    /**
+     * Create an animation that runs update code at a steady rate, and runs
+     * render code and redraws the canvas after each round of updates. Call
+     * run() or start() on the animation to begin.
+     *
+     * @param updatesPerSecond how many times a second to run the update code
+     * @param update the code that moves the shapes one step
+     * @param render the code that places shapes between steps before each
+     * frame is drawn
+     * @return the animation
+     */
+    public Animation animate(int updatesPerSecond, Animation.Update update,
+                             Animation.Render render) {
+        return new Animation(this, updatesPerSecond, update, render);
+    }
+
+    /**
+     * Start a thread that owns all drawing on this canvas. Once it is
+     * running, the canvas is only drawn by that thread, once per frame;
+     * redraw() calls from other threads just ask for the next frame to be
+     * drawn. Code that changes shapes should be given to post(), so that it
+     * runs on the render thread between frames instead of while a frame is
+     * being drawn.
+     *
+     * @param framesPerSecond how many frames to draw each second
+     */
+    public synchronized void startRenderThread(int framesPerSecond) {
+        if (framesPerSecond <= 0) {
+            throw new IllegalArgumentException("Frames per second must be > 0");
+        }
+        if (renderThread != null) {
+            throw new IllegalStateException("Render thread already running");
+        }
+
+        long framePeriod = 1_000_000_000L / framesPerSecond;
+        Thread thread = new Thread(() -> renderLoop(framePeriod), "Canvas Render");
+        thread.setDaemon(true);
+        renderThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop the render thread, after it has run the commands already posted
+     * and drawn a last frame. Drawing goes back to happening on whichever
+     * thread calls redraw(). Called on the render thread itself, it stops
+     * after the frame it is on, without waiting.
+     */
+    public void stopRenderThread() {
+        Thread thread;
+        synchronized (this) {
+            thread = renderThread;
+            renderThread = null;
+        }
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Run anything posted while the thread was stopping
+        while (!commands.isEmpty()) {
+            runCommands();
+        }
+    }
+
+    /**
+     * Determine if a render thread is drawing this canvas
+     */
+    public boolean hasRenderThread() {
+        return renderThread != null;
+    }
+
+    /**
+     * Run code that changes shapes on the render thread, before the next
+     * frame is drawn. Commands run in the order they were posted, and all
+     * the commands run before a frame make a single batch. If there is no
+     * render thread, the command runs right away.
+     *
+     * @param command the code to run
+     */
+    public void post(Runnable command) {
+        if (renderThread == null) {
+            command.run();
+        } else {
+            commands.add(command);
+        }
+    }
+
+    /**
+     * Have the render thread run a task at the start of each frame.
+     *
+     * @param task the task to run
+     */
+    void addFrameTask(FrameTask task) {
+        frameTasks.add(task);
+    }
+
+    /**
+     * Stop running a task each frame.
+     *
+     * @param task the task to stop running
+     */
+    void removeFrameTask(FrameTask task) {
+        frameTasks.remove(task);
+    }
+
+    /**
+     * Draw frames on the render thread until it is stopped.
+     */
+    private void renderLoop(long framePeriod) {
+        Thread self = Thread.currentThread();
+        long nextFrame = System.nanoTime();
+
+        try {
+            while (renderThread == self) {
+                try {
+                    for (FrameTask task : frameTasks) {
+                        if (task.startFrame()) {
+                            redrawRequested = true;
+                        }
+                    }
+                    runCommands();
+                    checkFrameCollisions();
+
+                    if (redrawRequested) {
+                        redrawRequested = false;
+                        show();
+                    }
+                } catch (RuntimeException e) {
+                    // Keep drawing frames even if one fails
+                    reportError(e);
+                }
+
+                // Wait for the next frame, or start it now if running behind
+                nextFrame += framePeriod;
+                long wait = nextFrame - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else {
+                    nextFrame = System.nanoTime();
+                }
+            }
+
+            // Finish up what was posted and show the result
+            while (!commands.isEmpty()) {
+                runCommands();
+            }
+            show();
+        } finally {
+            // If the thread ends some other way, drawing goes back to the
+            // threads that call redraw()
+            synchronized (this) {
+                if (renderThread == self) {
+                    renderThread = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Report an exception thrown by code the canvas runs for its user, such
+     * as a posted command or an event handler, on a thread that has to keep
+     * going. It is passed to the thread's uncaught exception handler, so it
+     * is reported the same way as if it had ended the thread.
+     *
+     * @param e the exception thrown
+     */
+    static void reportError(Throwable e) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+
+    /**
+     * Run the posted commands as a single batch.
+     */
+    private void runCommands() {
+        if (commands.isEmpty()) {
+            return;
+        }
+
+        beginBatch();
+        try {
+            Runnable command;
+            int count = 0;
+            while (count < MAX_COMMANDS_PER_FRAME && (command = commands.poll()) != null) {
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    // Keep drawing even if one command fails
+                    reportError(e);
+                }
+                count++;
+            }
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Redraw all shapes currently on the Canvas. While a batch is in progress
+     * the redraw is put off until the batch ends. While a render thread is
+     * running, the redraw happens on that thread in its next frame.
+     */
+    public void redraw() {
+        synchronized (shapes) {
+            if (batchDepth > 0) {
+                batchDirty = true;
+                return;
+            }
+        }
+
+        Thread thread = renderThread;
+        if (thread != null && thread != Thread.currentThread()) {
+            redrawRequested = true;
+            return;
+        }
+
+        show();
+    }
+
+    /**
+     * Repaint the parts of the canvas that changed and display it.
+     */
+    private void show() {
+        if (headless && recorder == null) {
+            synchronized (shapes) {
+                collectBulkChanges();
+                clearDamage();
+            }
+            return;
+        }
+
+        synchronized (renderLock) {
+            // Bring the picture up to date
+            if (frameImage == null) {
+                frameImage = new BufferedImage(width, height,
+                        BufferedImage.TYPE_INT_RGB);
+                synchronized (shapes) {
+                    fullDamage = true;
+                }
+            }
+            RenderMetrics frameMetrics = metrics;
+            if (frameMetrics == null) {
+                repaintDamage(frameImage);
+            } else {
+                long start = System.nanoTime();
+                long drawnBefore = shapesDrawn.get();
+                repaintDamage(frameImage);
+                frameMetrics.frameDrawn(System.nanoTime() - start,
+                                        shapesDrawn.get() - drawnBefore);
+            }
+
+            FrameRecorder frameRecorder = recorder;
+            if (frameRecorder != null) {
+                frameRecorder.capture(frameImage);
+            }
+            BufferStrategy strategy = bs;
+            if (strategy == null) {
+                // Headless, or not shown yet
+                return;
+            }
+
+            // Draw the graphics onscreen
+            Graphics buffer = strategy.getDrawGraphics();
+            buffer.drawImage(frameImage, 0, 0, null);
+            buffer.dispose();
+
+            // Display the predrawn graphics
+            strategy.show();
+        }
+    }
+
+    /**
+     * Damage the area where bulk shapes have changed since the last time,
+     * and bring their bounds up to date. Bulk shapes don't tell the canvas
+     * as each one changes, so this is done before each picture is drawn.
+     * Must be called holding the shapes lock.
+     */
+    private void collectBulkChanges() {
+        if (bulkShapes == null) {
+            return;
+        }
+        Rectangle changed = bulkShapes.takeChanges();
+        ShapeEntry entry = shapes.get(bulkShapes);
+        if (changed == null || entry == null) {
+            return;
+        }
+
+        Rectangle oldBounds = entry.bounds;
+        entry.updateBounds();
+        grid.move(entry, oldBounds);
+
+        damage(changed);
+        damageLayer(entry.layer, changed);
+    }
+
+    /**
+     * Repaint the damaged areas of a picture of the canvas. If the damage
+     * can't be tracked, the whole picture is repainted.
+     */
+    private void repaintDamage(BufferedImage image) {
+        boolean full;
+        Layer[] cached;
+        List<Rectangle> areas = new ArrayList<>();
+        List<List<ShapeEntry>> areaShapes = new ArrayList<>();
+
+        // Find what to draw while holding the lock, then draw without it
+        long requested = lockRequested();
+        synchronized (shapes) {
+            lockAcquired(requested);
+            collectBulkChanges();
+            full = fullDamage || hasUncachedUnbounded();
+            cached = cachedLayers();
+            if (!full) {
+                for (Rectangle area : damage) {
+                    areas.add(area);
+                    areaShapes.add(grid.query(overlapping(area)));
+                }
+            }
+            clearDamage();
+        }
+
+        Graphics buffer = image.createGraphics();
+
+        if (full) {
+            redraw(image, buffer);
+        } else {
+            Color background = backgroundColor;
+            long drawn = 0;
+
+            for (Layer layer : cached) {
+                refreshLayer(layer);
+            }
+
+            for (int i = 0; i < areas.size(); i++) {
+                Rectangle area = areas.get(i);
+                buffer.setClip(area);
+                buffer.setColor(background);
+                buffer.fillRect(area.x, area.y, area.width, area.height);
+
+                // Copy each cached layer in its place among the shapes
+                int next = 0;
+                for (ShapeEntry entry : areaShapes.get(i)) {
+                    Layer layer = entry.layer;
+                    while (next < cached.length && cached[next].number < layer.number) {
+                        drawLayer(cached[next++], buffer);
+                    }
+                    if (next < cached.length && cached[next] == layer) {
+                        continue;
+                    }
+
+                    entry.drawFunction.draw(buffer);
+                    drawn++;
+                }
+                while (next < cached.length) {
+                    drawLayer(cached[next++], buffer);
+                }
+            }
+            shapesDrawn.addAndGet(drawn);
+        }
+
+        buffer.dispose();
+    }
+
+    /**
+     * Record an area of the canvas that needs to be repainted, merging it
+     * with any overlapping areas already recorded.
+     *
+     * @param area the changed area, or null if it isn't known
+     */
+    private void damage(Rectangle area) {
+        batchChanged();
+        if (area == null) {
+            fullDamage = true;
+        }
+        if (fullDamage || area.isEmpty()) {
+            return;
+        }
+
+        // Include the edge pixels, and ignore anything off the canvas
+        Rectangle changed = new Rectangle(area);
+        changed.grow(1, 1);
+        changed = changed.intersection(new Rectangle(0, 0, width, height));
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        // Merge with any areas this one overlaps
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            Iterator<Rectangle> areas = damage.iterator();
+            while (areas.hasNext()) {
+                Rectangle other = areas.next();
+                if (other.intersects(changed)) {
+                    changed = changed.union(other);
+                    damageArea -= other.width * other.height;
+                    areas.remove();
+                    merged = true;
+                }
+            }
+        }
+
+        damage.add(changed);
+        damageArea += changed.width * changed.height;
+
+        // When most of the canvas has changed, just repaint all of it
+        if (damage.size() > MAX_DAMAGE_AREAS || damageArea > width * height / 2) {
+            fullDamage = true;
+        }
+    }
+
+    /**
+     * Get the area to look for shapes in when repainting an area. Some
+     * shapes, such as arcs, paint a pixel past the edge of their bounds,
+     * so shapes just outside the area are included as well.
+     */
+    private static Rectangle overlapping(Rectangle area) {
+        Rectangle reach = new Rectangle(area);
+        reach.grow(1, 1);
+        return reach;
+    }
+
+    /**
+     * Forget the recorded damage after it has been repainted.
+     */
+    private void clearDamage() {
+        damage.clear();
+        damageArea = 0;
+        fullDamage = false;
+    }
+
+    /**
+     * Redraw all shapes onto a graphics context
+     */
+    private void redraw(Graphics buffer) {
+        ShapeEntry[] list;
+        Layer[] cached;
+        long requested = lockRequested();
+        synchronized (shapes) {
+            lockAcquired(requested);
+            collectBulkChanges();
+            list = drawList();
+            cached = cachedLayers();
+        }
+        for (Layer layer : cached) {
+            refreshLayer(layer);
+        }
+
+        buffer.setColor(backgroundColor);
+        buffer.fillRect(0, 0, this.width, this.height);
+
+        // Skip the shapes that are entirely off the canvas, and the ones
+        // on cached layers, which are copied in their place instead
+        Rectangle visible = new Rectangle(0, 0, this.width, this.height);
+        long drawn = 0;
+        long culled = 0;
+        int next = 0;
+        for (ShapeEntry shape : list) {
+            Layer layer = shape.layer;
+            while (next < cached.length && cached[next].number < layer.number) {
+                drawLayer(cached[next++], buffer);
+            }
+            if (next < cached.length && cached[next] == layer) {
+                continue;
+            }
+
+            Rectangle bounds = shape.bounds;
+            if (bounds == null || bounds.intersects(visible)) {
+                shape.drawFunction.draw(buffer);
+                drawn++;
+            } else {
+                culled++;
+            }
+        }
+        while (next < cached.length) {
+            drawLayer(cached[next++], buffer);
+        }
+
+        shapesDrawn.addAndGet(drawn);
+        shapesCulled.addAndGet(culled);
+    }
+
+    /**
+     * Redraw all shapes onto a picture. Large pictures are split into tiles
+     * that are drawn on several threads at once.
+     *
+     * @param image the picture to draw on
+     * @param buffer a graphics context for drawing on the picture
+     */
+    private void redraw(BufferedImage image, Graphics buffer) {
+        int threads = renderThreads;
+        if (threads > 1 && (long) width * height >= MIN_TILED_PIXELS) {
+            redrawTiles(image, threads);
+        } else {
+            redraw(buffer);
+        }
+    }
+
+    /**
+     * Redraw all shapes onto a picture a tile at a time, drawing tiles on
+     * several threads at once. Each tile is drawn with the shapes that
+     * overlap it, in the same order as a whole picture is drawn.
+     */
+    private void redrawTiles(BufferedImage image, int threads) {
+        ShapeEntry[] list;
+        Layer[] cached;
+        long requested = lockRequested();
+        synchronized (shapes) {
+            lockAcquired(requested);
+            collectBulkChanges();
+            list = drawList();
+            cached = cachedLayers();
+        }
+        for (Layer layer : cached) {
+            refreshLayer(layer);
+        }
+
+        // Sort the shapes into the tiles they overlap, skipping the ones
+        // on cached layers and the ones entirely off the canvas
+        int across = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int down = (height + TILE_SIZE - 1) / TILE_SIZE;
+        List<List<ShapeEntry>> tiles = new ArrayList<>(across * down);
+        for (int i = 0; i < across * down; i++) {
+            tiles.add(new ArrayList<>());
+        }
+
+        Rectangle visible = new Rectangle(0, 0, this.width, this.height);
+        List<Layer> cachedList = Arrays.asList(cached);
+        long culled = 0;
+        long drawn = 0;
+        for (ShapeEntry shape : list) {
+            if (cachedList.contains(shape.layer)) {
+                continue;
+            }
+
+            Rectangle bounds = shape.bounds;
+            if (bounds == null) {
+                for (List<ShapeEntry> tile : tiles) {
+                    tile.add(shape);
+                }
+                drawn++;
+                continue;
+            }
+
+            // Include the pixel some shapes paint past their bounds
+            Rectangle area = overlapping(bounds).intersection(visible);
+            if (area.isEmpty()) {
+                culled++;
+                continue;
+            }
+            int right = (area.x + area.width - 1) / TILE_SIZE;
+            int bottom = (area.y + area.height - 1) / TILE_SIZE;
+            for (int ty = area.y / TILE_SIZE; ty <= bottom; ty++) {
+                for (int tx = area.x / TILE_SIZE; tx <= right; tx++) {
+                    tiles.get(ty * across + tx).add(shape);
+                }
+            }
+            drawn++;
+        }
+        shapesCulled.addAndGet(culled);
+
+        // Give each thread its own graphics context, made before any of
+        // them start drawing
+        Graphics base = image.createGraphics();
+        Graphics[] buffers = new Graphics[Math.min(threads, tiles.size())];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = base.create();
+        }
+        base.dispose();
+
+        Color background = backgroundColor;
+        AtomicInteger nextTile = new AtomicInteger();
+        lockLayers(cached, 0, () -> {
+            List<ForkJoinTask<?>> helpers = new ArrayList<>();
+            for (int i = 1; i < buffers.length; i++) {
+                Graphics helperBuffer = buffers[i];
+                helpers.add(TileThreads.POOL.submit(() ->
+                    drawTiles(helperBuffer, tiles, across, nextTile, cached, background)));
+            }
+
+            try {
+                drawTiles(buffers[0], tiles, across, nextTile, cached, background);
+            } finally {
+                for (ForkJoinTask<?> helper : helpers) {
+                    helper.quietlyJoin();
+                }
+            }
+
+            // Pass on anything thrown by a shape drawn on another thread
+            for (ForkJoinTask<?> helper : helpers) {
+                helper.join();
+            }
+        });
+
+        for (Graphics buffer : buffers) {
+            buffer.dispose();
+        }
+        // Count each shape once, however many tiles it was drawn in
+        shapesDrawn.addAndGet(drawn);
+    }
+
+    /**
+     * Hold the locks of the cached layers from a position in the list
+     * onwards while drawing, so their pictures don't change part way
+     * through.
+     */
+    private void lockLayers(Layer[] cached, int index, Runnable draw) {
+        if (index == cached.length) {
+            draw.run();
+            return;
+        }
+
+        synchronized (cached[index]) {
+            lockLayers(cached, index + 1, draw);
+        }
+    }
+
+    /**
+     * Draw tiles of a picture until there are none left. Called on several
+     * threads at once, each taking the next tile that hasn't been drawn.
+     * The thread that asked for the picture holds the cached layers' locks
+     * the whole time, so their pictures are copied without locking here.
+     */
+    private void drawTiles(Graphics buffer, List<List<ShapeEntry>> tiles, int across,
+                           AtomicInteger nextTile, Layer[] cached, Color background) {
+        int tile;
+        while ((tile = nextTile.getAndIncrement()) < tiles.size()) {
+            // Tiles at the right and bottom edges stop at the canvas's edge,
+            // so nothing is drawn on the picture below it
+            int x = (tile % across) * TILE_SIZE;
+            int y = (tile / across) * TILE_SIZE;
+            int tileWidth = Math.min(TILE_SIZE, width - x);
+            int tileHeight = Math.min(TILE_SIZE, height - y);
+            buffer.setClip(x, y, tileWidth, tileHeight);
+            buffer.setColor(background);
+            buffer.fillRect(x, y, tileWidth, tileHeight);
+
+            // Copy each cached layer in its place among the shapes
+            int next = 0;
+            for (ShapeEntry shape : tiles.get(tile)) {
+                while (next < cached.length && cached[next].number < shape.layer.number) {
+                    drawLayerImage(cached[next++], buffer);
+                }
+                shape.drawFunction.draw(buffer);
+            }
+            while (next < cached.length) {
+                drawLayerImage(cached[next++], buffer);
+            }
+        }
+    }
+
+    /**
+     * Copy the picture of a cached layer onto a graphics context, for a
+     * caller that already holds the layer's lock.
+     */
+    private static void drawLayerImage(Layer layer, Graphics buffer) {
+        if (layer.image != null) {
+            buffer.drawImage(layer.image, 0, 0, null);
+        }
+    }
+
+    /**
+     * Choose how many threads draw a whole picture of a large canvas, such
+     * as the first frame or a picture being saved. The picture is split
+     * into tiles that are drawn at the same time. Pictures smaller than
+     * about a million pixels are always drawn on one thread.
+     *
+     * @param threads the number of threads, counting the one that wants
+     * the picture; 1 draws every picture on that thread alone
+     */
+    public void setRenderThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be at least 1: " + threads);
+        }
+        renderThreads = threads;
+    }
+
+    /**
+     * Find how many threads draw a whole picture of a large canvas.
+     *
+     * @return the number of threads
+     */
+    public int getRenderThreads() {
+        return renderThreads;
+    }
+
+    /**
+     * Get the shapes in drawing order, copying them from the shapes map if
+     * they have changed since the last copy was made.
+     *
+     * @return the shapes, which must not be changed
+     */
+    private ShapeEntry[] drawList() {
+        ShapeEntry[] list = drawList;
+        if (list == null) {
+            synchronized (shapes) {
+                list = drawList;
+                if (list == null) {
+                    list = shapes.values().toArray(new ShapeEntry[0]);
+                    if (layeredShapes > 0) {
+                        // Stable, so each layer keeps the order shapes were
+                        // added in
+                        Arrays.sort(list, ShapeEntry.DRAW_ORDER);
+                    }
+                    drawList = list;
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Erase the whole canvas.
+     */
+    public void erase() {
+        synchronized (shapes) {
+            shapes.clear();
+            grid.clear();
+            bulkShapes = null;
+            unboundedShapes = 0;
+            layeredShapes = 0;
+            for (Layer layer : layers.values()) {
+                layer.unbounded = 0;
+                layer.allDirty = true;
+                layer.dirty = null;
+            }
+            fullDamage = true;
+            batchChanged();
+            drawList = null;
+        }
+
+        BufferStrategy strategy = bs;
+        if (strategy != null) {
+            synchronized (renderLock) {
+                Graphics buffer = strategy.getDrawGraphics();
+                buffer.setColor(backgroundColor);
+                Dimension size = canvas.getSize();
+                buffer.fillRect(0, 0, size.width, size.height);
+
+                buffer.dispose();
+                strategy.show();
+            }
+        }
+    }
+
+    /**
+     * Transform a color string into a usable color. The same Color object is
+     * returned each time a given color string is used.
+     *
+     * @param colorString the new color for the foreground of the Canvas
+     */
+    public static Color getColor(String colorString) {
+        Color c = standardColors.get(colorString);
+
+        if (c == null) {
+            c = customColors.get(colorString);
+        }
+
+        if (c == null) {
+            c = hexColors.get(colorString);
+        }
+
+        if (c == null) {
+            if (colorString.startsWith("#") && colorString.length() == 7) {
+                int red = hexByte(colorString, 1);
+                int green = hexByte(colorString, 3);
+                int blue = hexByte(colorString, 5);
+                c = new Color(red, green, blue);
+
+                // Remember the color unless there are already a great many
+                if (hexColors.size() < MAX_HEX_COLORS) {
+                    Color existing = hexColors.putIfAbsent(colorString, c);
+                    if (existing != null) {
+                        c = existing;
+                    }
+                }
+            } else {
+                c = Color.black;
+            }
+        }
+
+        return c;
+    }
+
+    /**
+     * Add a new named color that can be used anywhere a color string is
+     * accepted, or change a color that was added before.
+     *
+     * @param name the name of the color
+     * @param color the color the name stands for
+     * @throws IllegalArgumentException if the name is one of the standard
+     * colors or starts with "#"
+     */
+    public static void registerColor(String name, Color color) {
+        if (standardColors.containsKey(name) || name.startsWith("#")) {
+            throw new IllegalArgumentException("Color name can't be used: " + name);
+        }
+
+        customColors.put(name, color);
+    }
+
+    /**
+     * Read two hex digits from a color string.
+     *
+     * @param colorString the color string
+     * @param index the position of the first digit
+     * @return the value of the two digits, from 0 to 255
+     */
+    private static int hexByte(String colorString, int index) {
+        int high = Character.digit(colorString.charAt(index), 16);
+        int low = Character.digit(colorString.charAt(index + 1), 16);
+
+        if (high < 0 || low < 0) {
+            throw new NumberFormatException("For input string: \""
+                + colorString.substring(index, index + 2) + "\" under radix 16");
+        }
+
+        return (high << 4) | low;
+    }
+
+    /**
+     * Save the current canvas to the file
+     * 
+     * @param file the File object to save to.
+     * 
+     * @return true if the file saved correctly, false if the save failed.
+     */
+    public void saveToFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            saveToChannel(channel);
+        }
+    }
+
+    /**
+     * Save the current canvas to a file in the background. The picture is
+     * copied right away, so later changes to the shapes don't show up in
+     * the file, but it is compressed and written on another thread.
+     *
+     * @param file the File object to save to.
+     * @return a future that completes with the file once it is saved, or
+     * completes exceptionally if the save failed
+     */
+    public CompletableFuture<File> saveToFileAsync(File file) {
+        long start = System.nanoTime();
+        BufferedImage picture = snapshot();
+        String pictureTitle = title;
+
+        return CompletableFuture.supplyAsync(() -> {
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                synchronized (saveLock) {
+                    saveImage = drawPicture(saveImage, picture, pictureTitle);
+                    long encodeStart = System.nanoTime();
+                    pngEncoder.encode(saveImage, channel);
+                    saved(start, encodeStart);
+                }
+                return file;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, SaveThreads.POOL);
+    }
+
+    /**
+     * Copy the picture on the canvas as it is now. Only the parts that
+     * changed since it was last shown have to be drawn first.
+     *
+     * @return a copy of the picture, without the title
+     */
+    private BufferedImage snapshot() {
+        BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        synchronized (renderLock) {
+            if (frameImage == null) {
+                frameImage = new BufferedImage(width, height,
+                        BufferedImage.TYPE_INT_RGB);
+                synchronized (shapes) {
+                    fullDamage = true;
+                }
+            } else if (headless && recorder == null) {
+                // Headless canvases only keep the picture up to date while
+                // recording
+                synchronized (shapes) {
+                    fullDamage = true;
+                }
+            }
+            repaintDamage(frameImage);
+            frameImage.copyData(copy.getRaster());
+        }
+        return copy;
+    }
+
+    /**
+     * Save the current canvas as a PNG image to a stream. The stream is not
+     * closed.
+     *
+     * @param out the stream to write the image to
+     */
+    public void saveToStream(OutputStream out) throws IOException {
+        saveToChannel(Channels.newChannel(out));
+    }
+
+    /**
+     * Save the current canvas as a PNG image to a channel, such as a
+     * FileChannel. The channel is not closed.
+     *
+     * @param channel the channel to write the image to
+     */
+    public void saveToChannel(WritableByteChannel channel) throws IOException {
+        long start = System.nanoTime();
+        synchronized (saveLock) {
+            saveImage = drawPicture(saveImage, null, title);
+            long encodeStart = System.nanoTime();
+            pngEncoder.encode(saveImage, channel);
+            saved(start, encodeStart);
+        }
+    }
+
+    /**
+     * Record the time taken by a save that has just finished, if metrics
+     * are on.
+     *
+     * @param start when the save started
+     * @param encodeStart when encoding the PNG started
+     */
+    private void saved(long start, long encodeStart) {
+        RenderMetrics saveMetrics = metrics;
+        if (saveMetrics != null) {
+            long end = System.nanoTime();
+            saveMetrics.saved(end - start, end - encodeStart);
+        }
+    }
+
+    /**
+     * Change how saved pictures are compressed. Lower levels save faster
+     * but make bigger files; level 0 doesn't compress at all.
+     *
+     * @param level the compression level, from 0 (none) to 9 (smallest)
+     * @param filter the way rows are filtered before compression
+     */
+    public void setSaveCompression(int level, PngEncoder.Filter filter) {
+        synchronized (saveLock) {
+            pngEncoder.setCompression(level, filter);
+        }
+    }
+
+    /**
+     * Start recording every frame the canvas shows to a file, until
+     * stopRecording() is called.
+     *
+     * @param file the file to save the recording to
+     * @param format the kind of file to save
+     * @return the recorder, which tells how many frames have been saved
+     */
+    public FrameRecorder startRecording(File file, FrameRecorder.Format format)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return startRecording(channel, true, format);
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Start recording every frame the canvas shows to a channel, such as
+     * Channels.newChannel(System.out) to send raw frames to a video encoder,
+     * until stopRecording() is called. The channel is not closed.
+     *
+     * @param channel the channel to save the recording to
+     * @param format the kind of recording to save; APNG needs a FileChannel
+     * @return the recorder, which tells how many frames have been saved
+     */
+    public FrameRecorder startRecording(WritableByteChannel channel,
+                                        FrameRecorder.Format format) {
+        return startRecording(channel, false, format);
+    }
+
+    /**
+     * Start a recorder and have it capture each frame from now on.
+     */
+    private FrameRecorder startRecording(WritableByteChannel channel, boolean closeChannel,
+                                         FrameRecorder.Format format) {
+        synchronized (renderLock) {
+            if (recorder != null) {
+                throw new IllegalStateException("Canvas is already recording");
+            }
+
+            recorder = new FrameRecorder(channel, closeChannel, format, width, height);
+            synchronized (shapes) {
+                // The picture isn't kept up to date while headless and not
+                // recording
+                fullDamage = true;
+            }
+            return recorder;
+        }
+    }
+
+    /**
+     * Stop recording, and wait for the frames already captured to be saved.
+     *
+     * @throws IOException if the recording could not be saved
+     */
+    public void stopRecording() throws IOException {
+        FrameRecorder frameRecorder;
+        synchronized (renderLock) {
+            frameRecorder = recorder;
+            recorder = null;
+        }
+
+        if (frameRecorder != null) {
+            frameRecorder.finish();
+        }
+    }
+
+    /**
+     * Draw the current canvas, with its title underneath, into an image.
+     *
+     * @return the image of the canvas
+     */
+    BufferedImage createImage() {
+        return drawPicture(null, null, title);
+    }
+
+    /**
+     * Draw the current canvas, or a copy of it, with its title underneath,
+     * into an image.
+     *
+     * @param buffer an image to draw into if it is the right size, or null
+     * @param picture a copy of the canvas to use, or null to draw the shapes
+     * @param pictureTitle the title to draw under the picture
+     * @return the image of the canvas
+     */
+    private BufferedImage drawPicture(BufferedImage buffer, BufferedImage picture,
+                                      String pictureTitle) {
+        int fontheight = TitleFont.HEIGHT;
+
+        // Create a buffered image from the picture, unless the one given
+        // can be reused
+        if (buffer == null || buffer.getWidth() != width
+                || buffer.getHeight() != height + fontheight + 2) {
+            buffer = new BufferedImage(width, height + fontheight + 2,
+                    BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics bgc = buffer.createGraphics();
+        bgc.setColor(Color.white);
+        bgc.fillRect(0, 0, width, height + fontheight + 2);
+
+        if (picture == null) {
+            // Keep shapes that reach past the canvas out of the title strip
+            bgc.setClip(0, 0, width, height);
+            redraw(buffer, bgc);
+            bgc.setClip(null);
+        } else {
+            bgc.drawImage(picture, 0, 0, null);
+        }
+
+        bgc.setColor(Color.black);
+        bgc.setFont(TitleFont.FONT);
+        bgc.drawString(pictureTitle, 0, height + TitleFont.ASCENT + 1);
+        bgc.dispose();
+
+        return buffer;
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class SaveThreads - the threads that compress and write pictures
+     * saved in the background. The threads end when they have had nothing
+     * to do for a second, so they don't keep the program running.
+     */
+    private static class SaveThreads {
+        static final ExecutorService POOL = createPool();
+
+        private static ExecutorService createPool() {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                    1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    r -> new Thread(r, "Canvas Save"));
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class TileThreads - the threads that help draw the tiles of
+     * large pictures. There is one thread for each processor; they end
+     * when they have had nothing to do for a while, and don't keep the
+     * program running.
+     */
+    private static class TileThreads {
+        static final ForkJoinPool POOL = new ForkJoinPool(
+                Runtime.getRuntime().availableProcessors(), pool -> {
+                    ForkJoinWorkerThread thread =
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("Canvas Tiles " + thread.getPoolIndex());
+                    return thread;
+                }, null, false);
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class TitleFont - the font for the title under saved pictures.
+     * The font file is only read once, the first time a picture is saved.
+     */
+    private static class TitleFont {
+        static final Font FONT = loadFont();
+        static final int HEIGHT;
+        static final int ASCENT;
+
+        static {
+            BufferedImage buffer = new BufferedImage(1, 1,
+                BufferedImage.TYPE_INT_RGB);
+            Graphics bgc = buffer.getGraphics();
+
+            FontMetrics fm = bgc.getFontMetrics(FONT);
+            HEIGHT = fm.getHeight();
+            ASCENT = fm.getAscent();
+            bgc.dispose();
+        }
+
+        private static Font loadFont() {
+            try (InputStream fnt_stream = Canvas.class.getResourceAsStream("Caveat.ttf")) {
+                if (fnt_stream != null) {
+                    Font myFont = Font.createFont(Font.TRUETYPE_FONT, fnt_stream);
+                    return myFont.deriveFont(Font.BOLD, 20f);
+                }
+            } catch (FontFormatException | IOException ex) {
+                // Fall through to the default font
+            }
+
+            // Use the default font if an error occurs
+            return new Font("SansSerif", Font.PLAIN, 20);
+        }
+    }
+
+    /**
+     * ***********************************************************************
+     * Inner interface DrawShape - a functional interface that allows a shape to
+     * provide the canvas with a method to draw the shape
+     */
+    public interface DrawShape {
+        public void draw(Graphics g);
+    }
+
+    /**
+     * ***********************************************************************
+     * Inner interface ShapeOutline - a functional interface that allows a
+     * shape to tell the canvas its exact outline, so it can be picked out
+     * where it is actually drawn rather than anywhere in its bounds. The
+     * pixel at (x, y) counts as part of the shape if the outline contains
+     * the point (x, y), so an outline may need to be nudged to match the
+     * pixels a fill method actually sets.
+     */
+    public interface ShapeOutline {
+        public Shape getOutline();
+    }
+
+    /**
+     * ***********************************************************************
+     * Inner interface FrameTask - a functional interface for code the render
+     * thread runs at the start of each frame, before the posted commands.
+     * It returns true if it changed shapes, so the frame must be drawn.
+     */
+    interface FrameTask {
+        boolean startFrame();
+    }
+
+    /**
+     * ***********************************************************************
+     * Inner interface ShapeBounds - a functional interface that allows a shape
+     * to tell the canvas which area it currently covers
+     */
+    public interface ShapeBounds {
+        public Rectangle getBounds();
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class ShapeEntry - a shape on the canvas along with the area it
+     * covered when it was last drawn and its place in the drawing order.
+     */
+    static class ShapeEntry {
+        // Layer by layer, and in the order added within a layer
+        static final Comparator<ShapeEntry> DRAW_ORDER =
+                Comparator.comparingInt((ShapeEntry e) -> e.layer.number)
+                          .thenComparingLong(e -> e.order);
+
+        final Object referenceObject;
+        final DrawShape drawFunction;
+        final ShapeBounds boundsFunction;
+        final ShapeOutline outlineFunction;
+        final long order;
+        volatile Rectangle bounds;
+        volatile Layer layer;
+        int queryMark;
+        Collisions.Body collisionBody;
+
+        ShapeEntry(Object referenceObject, DrawShape drawFunction,
+                   ShapeBounds boundsFunction, ShapeOutline outlineFunction,
+                   long order, Layer layer) {
+            this.referenceObject = referenceObject;
+            this.drawFunction = drawFunction;
+            this.boundsFunction = boundsFunction;
+            this.outlineFunction = outlineFunction;
+            this.order = order;
+            this.layer = layer;
+            updateBounds();
+        }
+
+        void updateBounds() {
+            if (boundsFunction != null) {
+                bounds = boundsFunction.getBounds();
+            }
+        }
+
+        /**
+         * Determine if the shape covers a pixel. The pixel must already be
+         * known to be inside the bounds.
+         */
+        boolean contains(int x, int y) {
+            return outlineFunction == null
+                || outlineFunction.getOutline().contains(x, y);
+        }
+
+        /**
+         * Determine if the shape's outline overlaps an area. The area must
+         * already be known to overlap the bounds.
+         */
+        boolean intersects(Rectangle area) {
+            return outlineFunction == null
+                || outlineFunction.getOutline().intersects(area);
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Layer - a layer of shapes, with the picture of its shapes
+     * if it is cached. The picture is guarded by the layer itself, and the
+     * rest by the shapes lock.
+     */
+    private static class Layer {
+        final int number;
+        boolean cached = false;
+        int unbounded = 0;
+        boolean allDirty = true;
+        Rectangle dirty;
+        BufferedImage image;
+
+        Layer(int number) {
+            this.number = number;
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class CanvasPane - the actual canvas component contained in the
+     * Canvas frame.
+     */
+    private class CanvasPane extends java.awt.Canvas {
+        static final long serialVersionUID = 1;
         @Override
         public void paint(Graphics g) {
             redraw();
         }
     }
+
+    /**
+     * ***********************************************************************
+     * Inner class InputListener - passes the window's mouse and key events
+     * to the canvas's input, which queues them to be handled.
+     */
+    private class InputListener extends MouseAdapter implements KeyListener {
+        @Override
+        public void mousePressed(MouseEvent e) {
+            input.mouse(e);
+        }
+
+        @Override
+        public void mouseReleased(MouseEvent e) {
+            input.mouse(e);
+        }
+
+        @Override
+        public void mouseClicked(MouseEvent e) {
+            input.mouse(e);
+        }
+
+        @Override
+        public void mouseMoved(MouseEvent e) {
+            input.mouse(e);
+        }
+
+        @Override
+        public void mouseDragged(MouseEvent e) {
+            input.mouse(e);
+        }
+
+        @Override
+        public void mouseEntered(MouseEvent e) {
+            input.mouse(e);
+        }
+
+        @Override
+        public void mouseExited(MouseEvent e) {
+            input.mouse(e);
+        }
+
+        @Override
+        public void keyPressed(KeyEvent e) {
+            input.key(e);
+        }
+
+        @Override
+        public void keyReleased(KeyEvent e) {
+            input.key(e);
+        }
+
+        @Override
+        public void keyTyped(KeyEvent e) {
+            input.key(e);
+        }
+    }
 }
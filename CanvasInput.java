@@ -0,0 +1,678 @@
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CanvasInput passes the mouse and keyboard events of a canvas on to the
+ * handlers added with the canvas's addMouseHandler() and addKeyHandler()
+ * methods. Mouse handlers can be added for a single shape, which then hears
+ * about the mouse being pressed, released, clicked, dragged and moved over
+ * it, and the mouse entering and leaving it, or for the whole canvas.
+ *
+ * The window's event thread only copies each event into a queue, and the
+ * handlers are run by a thread of the input's own. Finding the shape under
+ * the mouse and running slow handlers therefore never holds up the window
+ * or the drawing of frames. Moves and drags that arrive while the handlers
+ * are still busy are merged into one, with the latest position, and events
+ * arriving while the queue is full are dropped.
+ *
+ * A mouse event goes to the shape on top under the mouse, out of the shapes
+ * with mouse handlers; shapes without handlers don't get in the way. Once
+ * the mouse is pressed on a shape, the drag, release and click that follow
+ * go to that shape too, even if the mouse has moved off it.
+ *
+ * Handlers may change shapes directly. If the canvas has a render thread,
+ * changes made with the canvas's post() method are drawn together in the
+ * next frame.
+ *
+ * @version 2026.10.17
+ */
+public class CanvasInput {
+    /**
+     * What happened in an input event.
+     */
+    public enum Action {
+        /** A mouse button or a key was pressed */
+        PRESSED,
+        /** A mouse button or a key was released */
+        RELEASED,
+        /** A mouse button was pressed and released without moving */
+        CLICKED,
+        /** The mouse moved with no button pressed */
+        MOVED,
+        /** The mouse moved with a button pressed */
+        DRAGGED,
+        /** The mouse moved onto a shape */
+        ENTERED,
+        /** The mouse moved off a shape */
+        EXITED,
+        /** A key was typed, giving a character */
+        TYPED
+    }
+
+    /**
+     * **********************************************************************
+     * Inner interface MouseHandler - a functional interface for code that
+     * responds to the mouse.
+     */
+    public interface MouseHandler {
+        public void handle(Mouse mouse);
+    }
+
+    /**
+     * **********************************************************************
+     * Inner interface KeyHandler - a functional interface for code that
+     * responds to the keyboard.
+     */
+    public interface KeyHandler {
+        public void handle(Key key);
+    }
+
+    // Events waiting to be handled; more arriving than this are dropped
+    private static final int MAX_QUEUED_EVENTS = 1024;
+
+    private final Canvas canvas;
+
+    private final Map<Object, List<MouseHandler>> shapeHandlers = new ConcurrentHashMap<>();
+    private final List<MouseHandler> mouseHandlers = new CopyOnWriteArrayList<>();
+    private final List<KeyHandler> keyHandlers = new CopyOnWriteArrayList<>();
+
+    // Guarded by the queue
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private Thread dispatcher;
+
+    private final AtomicLong eventsQueued = new AtomicLong();
+    private final AtomicLong eventsMerged = new AtomicLong();
+    private final AtomicLong eventsDropped = new AtomicLong();
+    private final AtomicLong eventsHandled = new AtomicLong();
+
+    // Used only by the dispatcher thread
+    private Object hovered;
+    private Object pressed;
+    private Object released;
+
+    /**
+     * Create the input for a canvas. The dispatcher thread is started when
+     * the first event is queued.
+     *
+     * @param canvas the canvas the events happen on
+     */
+    CanvasInput(Canvas canvas) {
+        this.canvas = canvas;
+    }
+
+    /**
+     * Add a handler to be told about the mouse on a shape.
+     *
+     * @param referenceObject the object that identifies the shape
+     * @param handler the handler to add
+     */
+    void addMouseHandler(Object referenceObject, MouseHandler handler) {
+        shapeHandlers.computeIfAbsent(referenceObject, k -> new CopyOnWriteArrayList<>())
+            .add(handler);
+    }
+
+    /**
+     * Remove a handler added for a shape.
+     *
+     * @param referenceObject the object that identifies the shape
+     * @param handler the handler to remove
+     */
+    void removeMouseHandler(Object referenceObject, MouseHandler handler) {
+        shapeHandlers.computeIfPresent(referenceObject, (k, handlers) -> {
+            handlers.remove(handler);
+            return handlers.isEmpty() ? null : handlers;
+        });
+    }
+
+    /**
+     * Add a handler to be told about the mouse anywhere on the canvas.
+     *
+     * @param handler the handler to add
+     */
+    void addMouseHandler(MouseHandler handler) {
+        mouseHandlers.add(handler);
+    }
+
+    /**
+     * Remove a handler added for the whole canvas.
+     *
+     * @param handler the handler to remove
+     */
+    void removeMouseHandler(MouseHandler handler) {
+        mouseHandlers.remove(handler);
+    }
+
+    /**
+     * Add a handler to be told about the keyboard.
+     *
+     * @param handler the handler to add
+     */
+    void addKeyHandler(KeyHandler handler) {
+        keyHandlers.add(handler);
+    }
+
+    /**
+     * Remove a keyboard handler.
+     *
+     * @param handler the handler to remove
+     */
+    void removeKeyHandler(KeyHandler handler) {
+        keyHandlers.remove(handler);
+    }
+
+    /**
+     * Determine how many events have been queued to be handled.
+     *
+     * @return the number of events queued
+     */
+    public long getEventsQueued() {
+        return eventsQueued.get();
+    }
+
+    /**
+     * Determine how many moves and drags were merged into the one before
+     * them because the handlers hadn't caught up.
+     *
+     * @return the number of events merged
+     */
+    public long getEventsMerged() {
+        return eventsMerged.get();
+    }
+
+    /**
+     * Determine how many events were dropped because the queue was full.
+     *
+     * @return the number of events dropped
+     */
+    public long getEventsDropped() {
+        return eventsDropped.get();
+    }
+
+    /**
+     * Determine how many queued events have been handled.
+     *
+     * @return the number of events handled
+     */
+    public long getEventsHandled() {
+        return eventsHandled.get();
+    }
+
+    /**
+     * Stop the thread that runs the handlers, once the handler it is
+     * running returns. Events still queued are handled by a new thread
+     * when the next event is queued.
+     */
+    public void stop() {
+        synchronized (queue) {
+            if (dispatcher != null) {
+                dispatcher.interrupt();
+                dispatcher = null;
+            }
+        }
+    }
+
+    /**
+     * Queue a mouse event from the window.
+     *
+     * @param e the event
+     */
+    void mouse(MouseEvent e) {
+        if (shapeHandlers.isEmpty() && mouseHandlers.isEmpty()) {
+            return;
+        }
+
+        Action action;
+        switch (e.getID()) {
+            case MouseEvent.MOUSE_PRESSED:  action = Action.PRESSED;  break;
+            case MouseEvent.MOUSE_RELEASED: action = Action.RELEASED; break;
+            case MouseEvent.MOUSE_CLICKED:  action = Action.CLICKED;  break;
+            case MouseEvent.MOUSE_MOVED:    action = Action.MOVED;    break;
+            case MouseEvent.MOUSE_DRAGGED:  action = Action.DRAGGED;  break;
+            // The mouse coming onto the canvas is handled as a move, so
+            // the shape under it is entered
+            case MouseEvent.MOUSE_ENTERED:  action = Action.MOVED;    break;
+            case MouseEvent.MOUSE_EXITED:   action = Action.EXITED;   break;
+            default: return;
+        }
+
+        Pending event = new Pending(false, action, e.getModifiersEx());
+        event.x = e.getX();
+        event.y = e.getY();
+        event.button = e.getButton();
+        event.clickCount = e.getClickCount();
+        queue(event);
+    }
+
+    /**
+     * Queue a key event from the window.
+     *
+     * @param e the event
+     */
+    void key(KeyEvent e) {
+        if (keyHandlers.isEmpty()) {
+            return;
+        }
+
+        Action action;
+        switch (e.getID()) {
+            case KeyEvent.KEY_PRESSED:  action = Action.PRESSED;  break;
+            case KeyEvent.KEY_RELEASED: action = Action.RELEASED; break;
+            case KeyEvent.KEY_TYPED:    action = Action.TYPED;    break;
+            default: return;
+        }
+
+        Pending event = new Pending(true, action, e.getModifiersEx());
+        event.keyCode = e.getKeyCode();
+        event.keyChar = e.getKeyChar();
+        queue(event);
+    }
+
+    /**
+     * Add an event to the queue, merging it into the last one if both are
+     * moves or both are drags, and start the dispatcher thread if needed.
+     */
+    private void queue(Pending event) {
+        if (canvas.getMetrics() != null) {
+            event.queuedAt = System.nanoTime();
+        }
+
+        synchronized (queue) {
+            Pending last = queue.peekLast();
+            if (!event.key && last != null && !last.key && last.action == event.action
+                    && (event.action == Action.MOVED || event.action == Action.DRAGGED)) {
+                last.x = event.x;
+                last.y = event.y;
+                last.modifiers = event.modifiers;
+                eventsMerged.incrementAndGet();
+                return;
+            }
+
+            if (queue.size() >= MAX_QUEUED_EVENTS) {
+                eventsDropped.incrementAndGet();
+                return;
+            }
+
+            queue.add(event);
+            eventsQueued.incrementAndGet();
+            if (dispatcher == null) {
+                dispatcher = new Thread(this::dispatchEvents, "Canvas Input");
+                dispatcher.setDaemon(true);
+                dispatcher.start();
+            }
+            queue.notify();
+        }
+    }
+
+    /**
+     * Handle events as they are queued, until the program ends or the
+     * thread is interrupted. Events queued after an interrupt start a new
+     * thread.
+     */
+    private void dispatchEvents() {
+        while (true) {
+            Pending event;
+            synchronized (queue) {
+                try {
+                    while (queue.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                        queue.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    // Let the next event queued start a new thread
+                    if (dispatcher == Thread.currentThread()) {
+                        dispatcher = null;
+                    }
+                    return;
+                }
+                event = queue.poll();
+            }
+
+            if (event.key) {
+                dispatchKey(event);
+            } else {
+                dispatchMouse(event);
+            }
+            eventsHandled.incrementAndGet();
+
+            RenderMetrics inputMetrics = canvas.getMetrics();
+            if (inputMetrics != null && event.queuedAt != 0) {
+                inputMetrics.inputHandled(System.nanoTime() - event.queuedAt);
+            }
+        }
+    }
+
+    /**
+     * Pass a key event to the keyboard handlers.
+     */
+    private void dispatchKey(Pending event) {
+        Key key = new Key(event.action, event.keyCode, event.keyChar, event.modifiers);
+        for (KeyHandler handler : keyHandlers) {
+            try {
+                handler.handle(key);
+            } catch (RuntimeException e) {
+                // Keep handling events even if one handler fails
+                Canvas.reportError(e);
+            }
+        }
+    }
+
+    /**
+     * Pass a mouse event to the shape it happened to, keeping track of the
+     * shape under the mouse and the shape the mouse was pressed on.
+     */
+    private void dispatchMouse(Pending event) {
+        switch (event.action) {
+            case MOVED:
+                Object target = shapeAt(event.x, event.y);
+                if (target != hovered) {
+                    if (hovered != null) {
+                        send(event, Action.EXITED, hovered);
+                    }
+                    hovered = target;
+                    if (target != null) {
+                        send(event, Action.ENTERED, target);
+                    }
+                }
+                send(event, Action.MOVED, target);
+                break;
+            case PRESSED:
+                pressed = shapeAt(event.x, event.y);
+                send(event, Action.PRESSED, pressed);
+                break;
+            case DRAGGED:
+                send(event, Action.DRAGGED, pressed);
+                break;
+            case RELEASED:
+                // The click that may follow goes to the same shape
+                released = pressed;
+                pressed = null;
+                send(event, Action.RELEASED, released);
+                break;
+            case CLICKED:
+                send(event, Action.CLICKED, released);
+                break;
+            case EXITED:
+                // The mouse has left the canvas
+                if (hovered != null) {
+                    send(event, Action.EXITED, hovered);
+                    hovered = null;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Find the shape on top at a point out of the shapes with handlers.
+     */
+    private Object shapeAt(int x, int y) {
+        if (shapeHandlers.isEmpty()) {
+            return null;
+        }
+
+        Object top = canvas.pickShape(x, y);
+        if (top == null || shapeHandlers.containsKey(top)) {
+            return top;
+        }
+
+        // The shape on top has no handlers, so look at the ones under it
+        List<Object> under = canvas.pickShapes(x, y);
+        for (int i = under.size() - 1; i >= 0; i--) {
+            if (shapeHandlers.containsKey(under.get(i))) {
+                return under.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pass a mouse event to a shape's handlers and then to the canvas's.
+     */
+    private void send(Pending event, Action action, Object shape) {
+        Mouse mouse = new Mouse(action, event.x, event.y, event.button,
+                                event.clickCount, event.modifiers, shape);
+        if (shape != null) {
+            List<MouseHandler> handlers = shapeHandlers.get(shape);
+            if (handlers != null) {
+                send(mouse, handlers);
+            }
+        }
+        send(mouse, mouseHandlers);
+    }
+
+    /**
+     * Pass a mouse event to a list of handlers.
+     */
+    private static void send(Mouse mouse, List<MouseHandler> handlers) {
+        for (MouseHandler handler : handlers) {
+            try {
+                handler.handle(mouse);
+            } catch (RuntimeException e) {
+                // Keep handling events even if one handler fails
+                Canvas.reportError(e);
+            }
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Mouse - something the mouse did on the canvas.
+     */
+    public static class Mouse {
+        private final Action action;
+        private final int x;
+        private final int y;
+        private final int button;
+        private final int clickCount;
+        private final int modifiers;
+        private final Object shape;
+
+        Mouse(Action action, int x, int y, int button, int clickCount, int modifiers,
+              Object shape) {
+            this.action = action;
+            this.x = x;
+            this.y = y;
+            this.button = button;
+            this.clickCount = clickCount;
+            this.modifiers = modifiers;
+            this.shape = shape;
+        }
+
+        /**
+         * Determine what the mouse did.
+         *
+         * @return the action
+         */
+        public Action getAction() {
+            return action;
+        }
+
+        /**
+         * Get the x coordinate of the mouse.
+         *
+         * @return the x coordinate on the canvas
+         */
+        public int getX() {
+            return x;
+        }
+
+        /**
+         * Get the y coordinate of the mouse.
+         *
+         * @return the y coordinate on the canvas
+         */
+        public int getY() {
+            return y;
+        }
+
+        /**
+         * Determine which button was pressed, released or clicked.
+         *
+         * @return 1 for the left button, 2 for the middle one, 3 for the
+         * right one, or 0 for none
+         */
+        public int getButton() {
+            return button;
+        }
+
+        /**
+         * Determine how many clicks in a row there have been.
+         *
+         * @return the click count, which is 2 for a double click
+         */
+        public int getClickCount() {
+            return clickCount;
+        }
+
+        /**
+         * Get the modifier keys and mouse buttons held down, as the
+         * extended modifiers of java.awt.event.InputEvent.
+         *
+         * @return the modifiers
+         */
+        public int getModifiers() {
+            return modifiers;
+        }
+
+        /**
+         * Determine if the shift key was held down.
+         */
+        public boolean isShiftDown() {
+            return (modifiers & InputEvent.SHIFT_DOWN_MASK) != 0;
+        }
+
+        /**
+         * Determine if the control key was held down.
+         */
+        public boolean isControlDown() {
+            return (modifiers & InputEvent.CTRL_DOWN_MASK) != 0;
+        }
+
+        /**
+         * Get the shape the event happened to.
+         *
+         * @return the object that identifies the shape, or null if it
+         * happened where there is no shape with mouse handlers
+         */
+        public Object getShape() {
+            return shape;
+        }
+
+        @Override
+        public String toString() {
+            return "Mouse " + action + " at " + x + "," + y
+                + (shape == null ? "" : " on " + shape);
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Key - something done on the keyboard.
+     */
+    public static class Key {
+        private final Action action;
+        private final int keyCode;
+        private final char keyChar;
+        private final int modifiers;
+
+        Key(Action action, int keyCode, char keyChar, int modifiers) {
+            this.action = action;
+            this.keyCode = keyCode;
+            this.keyChar = keyChar;
+            this.modifiers = modifiers;
+        }
+
+        /**
+         * Determine what was done with the key.
+         *
+         * @return PRESSED, RELEASED or TYPED
+         */
+        public Action getAction() {
+            return action;
+        }
+
+        /**
+         * Get the code of the key pressed or released, such as
+         * KeyEvent.VK_LEFT.
+         *
+         * @return the key code, or KeyEvent.VK_UNDEFINED for a typed key
+         */
+        public int getKeyCode() {
+            return keyCode;
+        }
+
+        /**
+         * Get the character typed.
+         *
+         * @return the character, or KeyEvent.CHAR_UNDEFINED if the key
+         * doesn't give one
+         */
+        public char getKeyChar() {
+            return keyChar;
+        }
+
+        /**
+         * Get the modifier keys held down, as the extended modifiers of
+         * java.awt.event.InputEvent.
+         *
+         * @return the modifiers
+         */
+        public int getModifiers() {
+            return modifiers;
+        }
+
+        /**
+         * Determine if the shift key was held down.
+         */
+        public boolean isShiftDown() {
+            return (modifiers & InputEvent.SHIFT_DOWN_MASK) != 0;
+        }
+
+        /**
+         * Determine if the control key was held down.
+         */
+        public boolean isControlDown() {
+            return (modifiers & InputEvent.CTRL_DOWN_MASK) != 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Key " + action + " " + (action == Action.TYPED
+                ? "'" + keyChar + "'" : KeyEvent.getKeyText(keyCode));
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Pending - an event copied from the window, waiting in the
+     * queue to be handled.
+     */
+    private static class Pending {
+        final boolean key;
+        final Action action;
+        int modifiers;
+        int x;
+        int y;
+        int button;
+        int clickCount;
+        int keyCode;
+        char keyChar;
+        long queuedAt;
+
+        Pending(boolean key, Action action, int modifiers) {
+            this.key = key;
+            this.action = action;
+            this.modifiers = modifiers;
+        }
+    }
+}
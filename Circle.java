@@ -1,5 +1,7 @@
 import java.awt.Graphics;
 import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Ellipse2D;
 
 /**
  * A circle that can be manipulated and that draws itself on a canvas.
@@ -15,6 +17,7 @@ public class Circle
     private int yPosition;
     private Color color;
     private boolean isVisible;
+    private Canvas canvas;
         
     /**
      * Create a new circle at default position with default color.
@@ -26,13 +29,39 @@ public class Circle
         yPosition = 90;
         color = Canvas.getColor("blue");
     }    
+
+    /**
+     * Create a circle with a given position, size and color.
+     * @param x the x location of the circle's bounding box
+     * @param y the y location of the circle's bounding box
+     * @param diameter the diameter of the circle
+     * @param color the color of the circle
+     */
+    Circle(int x, int y, int diameter, Color color)
+    {
+        this.xPosition = x;
+        this.yPosition = y;
+        this.diameter = diameter;
+        this.color = color;
+    }
     
     /**
      * Make this circle visible. If it was already visible, do nothing.
      */
     public void makeVisible()
+    {
+        makeVisible(Canvas.getCanvas());
+    }
+
+    /**
+     * Make this circle visible on a given canvas. If it was already visible,
+     * do nothing.
+     * @param canvas the canvas to draw the circle on
+     */
+    public void makeVisible(Canvas canvas)
     {
         if (!isVisible) {
+            this.canvas = canvas;
             isVisible = true;
             add();
         }
@@ -89,6 +118,7 @@ public class Circle
     public void moveHorizontal(int distance)
     {
         xPosition += distance;
+        update();
     }
 
     /**
@@ -99,6 +129,64 @@ public class Circle
     public void moveVertical(int distance)
     {
         yPosition += distance;
+        update();
+    }
+
+    /**
+     * Move the circle to a given (X, Y) coordinate
+     * @param x the new X location to move to
+     * @param y the new Y location to move to
+     */
+    public void setPosition(int x, int y)
+    {
+        xPosition = x;
+        yPosition = y;
+        update();
+    }
+
+    /**
+     * Determine the current X location of the circle
+     * @return the current X location of the circle
+     */
+    public int getX()
+    {
+        return xPosition;
+    }
+
+    /**
+     * Determine the current Y location of the circle
+     * @return the current Y location of the circle
+     */
+    public int getY()
+    {
+        return yPosition;
+    }
+
+    /**
+     * Determine the current diameter of the circle
+     * @return the current diameter of the circle
+     */
+    public int getDiameter()
+    {
+        return diameter;
+    }
+
+    /**
+     * Determine if the circle should be showing on the canvas
+     * @return true if the shape is not hidden
+     */
+    public boolean isVisible()
+    {
+        return isVisible;
+    }
+
+    /**
+     * Determine the color of the circle
+     * @return the color the circle is drawn in
+     */
+    Color getColor()
+    {
+        return color;
     }
 
     /**
@@ -108,6 +196,7 @@ public class Circle
     public void changeSize(int newDiameter)
     {
         diameter = newDiameter;
+        update();
     }
     
     /**
@@ -120,6 +209,7 @@ public class Circle
     public void changeColor(String newColor)
     {
         color = Canvas.getColor(newColor);
+        update();
     }
 
     /**
@@ -128,9 +218,10 @@ public class Circle
     private void add()
     {
         if(isVisible) {
-            Canvas canvas = Canvas.getCanvas();
             canvas.add(this,(g) -> {g.setColor(color);
-                                    g.fillOval(xPosition, yPosition, diameter, diameter);});
+                                    g.fillOval(xPosition, yPosition, diameter, diameter);},
+                            () -> new Rectangle(xPosition, yPosition, diameter, diameter),
+                            () -> new Ellipse2D.Double(xPosition, yPosition, diameter, diameter));
         }
     }
 
@@ -140,11 +231,20 @@ public class Circle
     private void remove()
     {
         if(isVisible) {
-            Canvas canvas = Canvas.getCanvas();
             canvas.remove(this);
         }
     }
 
+    /**
+     * Tell the canvas that the circle has changed.
+     */
+    private void update()
+    {
+        if(isVisible) {
+            canvas.update(this);
+        }
+    }
+
     /**
      * Get a text description of the circle.
      */
@@ -0,0 +1,838 @@
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Collisions finds the shapes on a canvas that overlap each other. Shapes
+ * take part once they are made collidable with the canvas's setCollidable()
+ * method, or given a handler of their own with addCollisionHandler().
+ * Each check finds every pair of collidable shapes that overlap, and tells
+ * the collision handlers about each one. Checks are made once a frame by
+ * the canvas's render thread and by animations, as long as there are
+ * handlers, or whenever the canvas's checkCollisions() is called.
+ *
+ * A check first puts the shapes' bounds into a grid of cells about the
+ * size of a shape, so only shapes sharing a cell are compared, instead of
+ * every shape with every other one. The pairs whose bounds overlap are
+ * then tested exactly: circles as circles, rectangles as rectangles, and
+ * triangles and arcs as polygons, with an arc's curve followed to within a
+ * tenth of a pixel. Shapes that only touch along an edge don't collide.
+ *
+ * @version 2026.10.17
+ */
+public class Collisions {
+    /**
+     * **********************************************************************
+     * Inner interface Handler - a functional interface for code that
+     * responds to two shapes colliding.
+     */
+    public interface Handler {
+        public void collide(Contact contact);
+    }
+
+    // Shapes covering more cells than this are compared with every shape
+    private static final int MAX_CELLS_PER_SHAPE = 64;
+    // Most grid cells to use for each shape checked
+    private static final int CELLS_PER_SHAPE = 4;
+    // Furthest an arc's polygon strays from its curve
+    private static final double FLATNESS = 0.1;
+
+    // Kinds of shape, for the exact tests
+    private static final int BOX = 0;
+    private static final int CIRCLE = 1;
+    private static final int POLYGONS = 2;
+
+    private final Canvas canvas;
+
+    private final Set<Object> collidable = ConcurrentHashMap.newKeySet();
+    private final Map<Object, List<Handler>> shapeHandlers = new ConcurrentHashMap<>();
+    private final List<Handler> handlers = new CopyOnWriteArrayList<>();
+
+    private volatile int shapesChecked = 0;
+    private volatile long pairsTested = 0;
+
+    // Used only while holding this object's lock: the shapes being
+    // checked, their bounds and the cells of the grid they cover
+    private Body[] bodies = new Body[0];
+    private int[] left = new int[0];
+    private int[] top = new int[0];
+    private int[] right = new int[0];
+    private int[] bottom = new int[0];
+    private int[] cellLeft = new int[0];
+    private int[] cellTop = new int[0];
+    private int[] cellRight = new int[0];
+    private int[] cellBottom = new int[0];
+    private int[] cellStart = new int[0];
+    private int[] cellShapes = new int[0];
+    private long[] pairs = new long[64];
+    private int pairCount;
+
+    /**
+     * Create the collisions for a canvas.
+     *
+     * @param canvas the canvas whose shapes collide
+     */
+    Collisions(Canvas canvas) {
+        this.canvas = canvas;
+    }
+
+    /**
+     * Make a shape take part in collisions or not.
+     *
+     * @param referenceObject the object that identifies the shape
+     * @param isCollidable true if the shape should collide with others
+     */
+    void setCollidable(Object referenceObject, boolean isCollidable) {
+        if (isCollidable) {
+            collidable.add(referenceObject);
+        } else {
+            collidable.remove(referenceObject);
+        }
+    }
+
+    /**
+     * Determine if a shape takes part in collisions.
+     *
+     * @param referenceObject the object that identifies the shape
+     */
+    boolean isCollidable(Object referenceObject) {
+        return collidable.contains(referenceObject);
+    }
+
+    /**
+     * Add a handler to be told about the collisions of one shape, and make
+     * the shape collidable.
+     *
+     * @param referenceObject the object that identifies the shape
+     * @param handler the handler to add
+     */
+    void addHandler(Object referenceObject, Handler handler) {
+        collidable.add(referenceObject);
+        shapeHandlers.computeIfAbsent(referenceObject, k -> new CopyOnWriteArrayList<>())
+            .add(handler);
+    }
+
+    /**
+     * Remove a handler added for one shape. The shape stays collidable.
+     *
+     * @param referenceObject the object that identifies the shape
+     * @param handler the handler to remove
+     */
+    void removeHandler(Object referenceObject, Handler handler) {
+        shapeHandlers.computeIfPresent(referenceObject, (k, list) -> {
+            list.remove(handler);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    /**
+     * Add a handler to be told about every collision.
+     *
+     * @param handler the handler to add
+     */
+    void addHandler(Handler handler) {
+        handlers.add(handler);
+    }
+
+    /**
+     * Remove a handler added for every collision.
+     *
+     * @param handler the handler to remove
+     */
+    void removeHandler(Handler handler) {
+        handlers.remove(handler);
+    }
+
+    /**
+     * Determine if any collision handlers have been added.
+     */
+    boolean hasHandlers() {
+        return !handlers.isEmpty() || !shapeHandlers.isEmpty();
+    }
+
+    /**
+     * Determine how many shapes on the canvas the last check looked at.
+     *
+     * @return the number of collidable shapes found
+     */
+    public int getShapesChecked() {
+        return shapesChecked;
+    }
+
+    /**
+     * Determine how many pairs of shapes the last check tested exactly,
+     * because their bounds overlapped.
+     *
+     * @return the number of pairs tested
+     */
+    public long getPairsTested() {
+        return pairsTested;
+    }
+
+    /**
+     * Find the collidable shapes that overlap, and tell the handlers about
+     * them as one batch of changes.
+     *
+     * @return the pairs of shapes that overlap, in the order the shapes
+     * are drawn
+     */
+    List<Contact> check() {
+        RenderMetrics checkMetrics = canvas.getMetrics();
+        long start = checkMetrics == null ? 0 : System.nanoTime();
+
+        List<Contact> contacts;
+        synchronized (this) {
+            contacts = findContacts();
+        }
+
+        if (checkMetrics != null) {
+            checkMetrics.collisionsChecked(System.nanoTime() - start);
+        }
+
+        if (!contacts.isEmpty() && hasHandlers()) {
+            canvas.batch(() -> dispatch(contacts));
+        }
+        return contacts;
+    }
+
+    /**
+     * Pass each contact to the handlers of the two shapes and then to the
+     * handlers of every collision.
+     */
+    private void dispatch(List<Contact> contacts) {
+        for (Contact contact : contacts) {
+            List<Handler> list = shapeHandlers.get(contact.shape);
+            if (list != null) {
+                dispatch(contact, list);
+            }
+            list = shapeHandlers.get(contact.other);
+            if (list != null) {
+                dispatch(contact.swapped(), list);
+            }
+            dispatch(contact, handlers);
+        }
+    }
+
+    /**
+     * Pass a contact to a list of handlers.
+     */
+    private static void dispatch(Contact contact, List<Handler> list) {
+        for (Handler handler : list) {
+            try {
+                handler.collide(contact);
+            } catch (RuntimeException e) {
+                // Keep going even if one handler fails
+                Canvas.reportError(e);
+            }
+        }
+    }
+
+    /**
+     * Find the pairs of collidable shapes that overlap.
+     */
+    private List<Contact> findContacts() {
+        List<Canvas.ShapeEntry> entries = canvas.findEntries(collidable);
+        if (bodies.length < entries.size()) {
+            int size = entries.size();
+            bodies = Arrays.copyOf(bodies, size);
+            left = new int[size];
+            top = new int[size];
+            right = new int[size];
+            bottom = new int[size];
+            cellLeft = new int[size];
+            cellTop = new int[size];
+            cellRight = new int[size];
+            cellBottom = new int[size];
+        }
+
+        int count = 0;
+        for (Canvas.ShapeEntry entry : entries) {
+            Rectangle bounds = entry.bounds;
+            if (bounds == null || bounds.isEmpty()) {
+                continue;
+            }
+            Body body = entry.collisionBody;
+            if (body == null) {
+                body = new Body(entry);
+                entry.collisionBody = body;
+            }
+            body.bounds = bounds;
+            bodies[count] = body;
+            left[count] = bounds.x;
+            top[count] = bounds.y;
+            right[count] = bounds.x + bounds.width;
+            bottom[count] = bounds.y + bounds.height;
+            count++;
+        }
+
+        shapesChecked = count;
+        pairCount = 0;
+        if (count > 1) {
+            findContacts(count);
+        }
+
+        // The shapes are in drawing order, so sorting the pairs by their
+        // numbers puts the contacts in drawing order too
+        Arrays.sort(pairs, 0, pairCount);
+        List<Contact> contacts = new ArrayList<>(pairCount);
+        for (int p = 0; p < pairCount; p++) {
+            contacts.add(new Contact(bodies[(int) (pairs[p] >>> 32)].entry,
+                                     bodies[(int) pairs[p]].entry));
+        }
+
+        // Let go of the shapes until the next check
+        Arrays.fill(bodies, 0, count, null);
+        return contacts;
+    }
+
+    /**
+     * Put the shapes into a grid and test the pairs that share a cell.
+     */
+    private void findContacts(int count) {
+        // Use cells about the size of the average shape, over the area the
+        // shapes cover, with no more cells than are needed
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        long maxX = Long.MIN_VALUE;
+        long maxY = Long.MIN_VALUE;
+        long sizes = 0;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, left[i]);
+            minY = Math.min(minY, top[i]);
+            maxX = Math.max(maxX, right[i]);
+            maxY = Math.max(maxY, bottom[i]);
+            sizes += Math.max((long) right[i] - left[i], (long) bottom[i] - top[i]);
+        }
+        long width = maxX - minX;
+        long height = maxY - minY;
+        long cellSize = Math.max(1, sizes / count);
+        long maxCells = (long) count * CELLS_PER_SHAPE;
+        if ((width / cellSize + 1) * (height / cellSize + 1) > maxCells) {
+            cellSize = Math.max(cellSize, (long) Math.ceil(Math.sqrt((double) width * height / maxCells)));
+            while ((width / cellSize + 1) * (height / cellSize + 1) > maxCells) {
+                cellSize++;
+            }
+        }
+        int columns = (int) (width / cellSize + 1);
+        int cells = columns * (int) (height / cellSize + 1);
+
+        // Count the shapes in each cell, then list them cell by cell.
+        // Large shapes are listed separately.
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+        } else {
+            Arrays.fill(cellStart, 0, cells + 1, 0);
+        }
+        int large = 0;
+        int listed = 0;
+        for (int i = 0; i < count; i++) {
+            cellLeft[i] = (int) ((left[i] - minX) / cellSize);
+            cellTop[i] = (int) ((top[i] - minY) / cellSize);
+            cellRight[i] = (int) ((right[i] - 1L - minX) / cellSize);
+            cellBottom[i] = (int) ((bottom[i] - 1L - minY) / cellSize);
+            long covered = (long) (cellRight[i] - cellLeft[i] + 1)
+                         * (cellBottom[i] - cellTop[i] + 1);
+            if (covered > MAX_CELLS_PER_SHAPE) {
+                large++;
+                continue;
+            }
+            for (int cy = cellTop[i]; cy <= cellBottom[i]; cy++) {
+                for (int cx = cellLeft[i]; cx <= cellRight[i]; cx++) {
+                    cellStart[cy * columns + cx + 1]++;
+                }
+            }
+            listed += covered;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        if (cellShapes.length < listed + large) {
+            cellShapes = new int[listed + large];
+        }
+        int[] next = Arrays.copyOf(cellStart, cells);
+        int nextLarge = listed;
+        for (int i = 0; i < count; i++) {
+            if ((long) (cellRight[i] - cellLeft[i] + 1) * (cellBottom[i] - cellTop[i] + 1)
+                    > MAX_CELLS_PER_SHAPE) {
+                cellShapes[nextLarge++] = i;
+                continue;
+            }
+            for (int cy = cellTop[i]; cy <= cellBottom[i]; cy++) {
+                for (int cx = cellLeft[i]; cx <= cellRight[i]; cx++) {
+                    cellShapes[next[cy * columns + cx]++] = i;
+                }
+            }
+        }
+
+        // Test each pair sharing a cell, in the one cell that holds the
+        // top left corner of where their bounds overlap, so no pair is
+        // tested twice
+        long tested = 0;
+        for (int c = 0; c < cells; c++) {
+            int end = cellStart[c + 1];
+            for (int i = cellStart[c]; i < end; i++) {
+                int a = cellShapes[i];
+                for (int j = i + 1; j < end; j++) {
+                    int b = cellShapes[j];
+                    if (left[a] < right[b] && left[b] < right[a]
+                            && top[a] < bottom[b] && top[b] < bottom[a]
+                            && Math.max(cellLeft[a], cellLeft[b])
+                               + Math.max(cellTop[a], cellTop[b]) * columns == c) {
+                        tested++;
+                        test(a, b);
+                    }
+                }
+            }
+        }
+
+        // Test the large shapes against every other shape, and each other
+        for (int k = listed; k < listed + large; k++) {
+            int a = cellShapes[k];
+            for (int i = 0; i < count; i++) {
+                if (i != a && left[a] < right[i] && left[i] < right[a]
+                        && top[a] < bottom[i] && top[i] < bottom[a]
+                        && !(i < a && isLarge(i))) {
+                    tested++;
+                    test(a, i);
+                }
+            }
+        }
+        pairsTested = tested;
+    }
+
+    /**
+     * Determine if a shape was listed with the large shapes.
+     */
+    private boolean isLarge(int i) {
+        return (long) (cellRight[i] - cellLeft[i] + 1) * (cellBottom[i] - cellTop[i] + 1)
+            > MAX_CELLS_PER_SHAPE;
+    }
+
+    /**
+     * Test two shapes whose bounds overlap exactly, and add them to the
+     * pairs found if they overlap, as their numbers with the lower first.
+     */
+    private void test(int a, int b) {
+        if (overlaps(bodies[a], bodies[b])) {
+            if (pairCount == pairs.length) {
+                pairs = Arrays.copyOf(pairs, pairCount * 2);
+            }
+            pairs[pairCount++] = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+        }
+    }
+
+    /**
+     * Determine if two shapes whose bounds overlap overlap each other.
+     */
+    private static boolean overlaps(Body a, Body b) {
+        a.prepare();
+        b.prepare();
+        if (a.kind > b.kind) {
+            Body swap = a;
+            a = b;
+            b = swap;
+        }
+
+        if (a.kind == BOX && b.kind == BOX) {
+            // Their bounds are the shapes, and are known to overlap
+            return true;
+        }
+        if (a.kind == BOX && b.kind == CIRCLE) {
+            Rectangle box = a.bounds;
+            double dx = b.cx - Math.max(box.x, Math.min(b.cx, box.x + box.width));
+            double dy = b.cy - Math.max(box.y, Math.min(b.cy, box.y + box.height));
+            return dx * dx + dy * dy < b.r * b.r;
+        }
+        if (a.kind == CIRCLE && b.kind == CIRCLE) {
+            double dx = a.cx - b.cx;
+            double dy = a.cy - b.cy;
+            double reach = a.r + b.r;
+            return dx * dx + dy * dy < reach * reach;
+        }
+
+        // At least one is made of polygons
+        for (double[] piece : b.pieces) {
+            if (a.kind == CIRCLE ? overlaps(a.cx, a.cy, a.r, piece)
+                                 : overlaps(a.pieces, piece)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine if any of a list of convex polygons overlaps another one.
+     */
+    private static boolean overlaps(double[][] pieces, double[] polygon) {
+        for (double[] piece : pieces) {
+            if (!separates(piece, polygon) && !separates(polygon, piece)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine if a line along one of the edges of a convex polygon
+     * separates it from another convex polygon. Polygons are given as
+     * their corners, x then y, going round the way that makes (dy, -dx)
+     * point out of each edge.
+     */
+    private static boolean separates(double[] p, double[] q) {
+        int n = p.length;
+        for (int i = 0; i < n; i += 2) {
+            int j = (i + 2) % n;
+            double nx = p[j + 1] - p[i + 1];
+            double ny = p[i] - p[j];
+            if (nx == 0 && ny == 0) {
+                continue;
+            }
+
+            // The polygon is all on the inside of its edge, so the edge
+            // separates them if the other polygon is all on the outside
+            double edge = p[i] * nx + p[i + 1] * ny;
+            boolean outside = true;
+            for (int k = 0; k < q.length && outside; k += 2) {
+                outside = q[k] * nx + q[k + 1] * ny >= edge;
+            }
+            if (outside) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine if a circle overlaps a convex polygon: either the centre
+     * is inside the polygon, or it is closer than the radius to an edge.
+     */
+    private static boolean overlaps(double cx, double cy, double r, double[] p) {
+        int n = p.length;
+        boolean inside = true;
+        for (int i = 0; i < n; i += 2) {
+            int j = (i + 2) % n;
+            double ex = p[j] - p[i];
+            double ey = p[j + 1] - p[i + 1];
+            double length = ex * ex + ey * ey;
+            if (length == 0) {
+                continue;
+            }
+
+            double dx = cx - p[i];
+            double dy = cy - p[i + 1];
+            if (dx * ey - dy * ex >= 0) {
+                inside = false;
+            }
+
+            // The nearest point of the edge to the centre
+            double t = Math.max(0, Math.min(1, (dx * ex + dy * ey) / length));
+            dx -= t * ex;
+            dy -= t * ey;
+            if (dx * dx + dy * dy < r * r) {
+                return true;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Put a polygon's corners in the order that makes (dy, -dx) point out
+     * of each edge.
+     *
+     * @return the polygon
+     */
+    private static double[] oriented(double[] p) {
+        double area = 0;
+        for (int i = 0; i < p.length; i += 2) {
+            int j = (i + 2) % p.length;
+            area += p[i] * p[j + 1] - p[j] * p[i + 1];
+        }
+        if (area < 0) {
+            for (int i = 0, j = p.length - 2; i < j; i += 2, j -= 2) {
+                double x = p[i];
+                double y = p[i + 1];
+                p[i] = p[j];
+                p[i + 1] = p[j + 1];
+                p[j] = x;
+                p[j + 1] = y;
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Break a pie shaped arc of a circle into polygons no more than half a
+     * circle each, so every piece is convex.
+     */
+    private static double[][] pie(Arc2D arc) {
+        double cx = arc.getCenterX();
+        double cy = arc.getCenterY();
+        double r = arc.getWidth() / 2;
+        double start = Math.toRadians(arc.getAngleStart());
+        double extent = Math.toRadians(arc.getAngleExtent());
+
+        // The angle between points that keeps each edge close to the
+        // curve, which is a little under 2 acos(1 - flatness / r)
+        double step = r <= FLATNESS ? Math.PI : 2 * Math.sqrt(2 * FLATNESS / r);
+        int count = (int) Math.ceil(Math.abs(extent) / Math.PI);
+        double[][] pieces = new double[count][];
+        for (int p = 0; p < count; p++) {
+            double from = start + extent * p / count;
+            double sweep = extent / count;
+            int segments = Math.max(1, (int) Math.ceil(Math.abs(sweep) / step));
+            double[] piece = new double[2 * (segments + 2)];
+            piece[0] = cx;
+            piece[1] = cy;
+
+            // Turn a unit vector round the arc one segment at a time
+            double turnCos = Math.cos(sweep / segments);
+            double turnSin = Math.sin(sweep / segments);
+            double ux = Math.cos(from);
+            double uy = Math.sin(from);
+            for (int s = 0; s <= segments; s++) {
+                // Arc angles go anticlockwise, with y going down the canvas
+                piece[2 * s + 2] = cx + r * ux;
+                piece[2 * s + 3] = cy - r * uy;
+                double turned = ux * turnCos - uy * turnSin;
+                uy = ux * turnSin + uy * turnCos;
+                ux = turned;
+            }
+            pieces[p] = oriented(piece);
+        }
+        return pieces;
+    }
+
+    /**
+     * Find the corners of an outline, following its curves to within the
+     * flatness, or of its convex hull if the outline isn't convex.
+     *
+     * @return the corners, or null if the outline has no area
+     */
+    private static double[] convex(Shape outline) {
+        double[] points = new double[16];
+        int n = 0;
+        int rings = 0;
+        double[] coords = new double[6];
+
+        // Outlines with only straight edges are read as they are, without
+        // the slower flattening iterator
+        PathIterator it = outline.getPathIterator(null);
+        while (!it.isDone()) {
+            int type = it.currentSegment(coords);
+            if (type == PathIterator.SEG_QUADTO || type == PathIterator.SEG_CUBICTO) {
+                // Start again, following the curves
+                it = outline.getPathIterator(null, FLATNESS);
+                n = 0;
+                rings = 0;
+                continue;
+            }
+            if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+                if (type == PathIterator.SEG_MOVETO) {
+                    rings++;
+                }
+                if (n == points.length) {
+                    points = Arrays.copyOf(points, n * 2);
+                }
+                points[n++] = coords[0];
+                points[n++] = coords[1];
+            }
+            it.next();
+        }
+
+        // Drop a last corner that just closes the outline
+        if (n >= 4 && points[n - 2] == points[0] && points[n - 1] == points[1]) {
+            n -= 2;
+        }
+        if (n < 6) {
+            return null;
+        }
+        if (rings == 1 && isConvex(points, n)) {
+            return oriented(Arrays.copyOf(points, n));
+        }
+        double[] hull = hull(points, n);
+        return hull == null ? null : oriented(hull);
+    }
+
+    /**
+     * Determine if a polygon's corners all turn the same way.
+     */
+    private static boolean isConvex(double[] p, int n) {
+        int turns = 0;
+        for (int i = 0; i < n; i += 2) {
+            int j = (i + 2) % n;
+            int k = (i + 4) % n;
+            double cross = (p[j] - p[i]) * (p[k + 1] - p[j + 1])
+                         - (p[j + 1] - p[i + 1]) * (p[k] - p[j]);
+            turns |= cross > 0 ? 1 : cross < 0 ? 2 : 0;
+        }
+        return turns == 1 || turns == 2;
+    }
+
+    /**
+     * Find the convex hull of some points.
+     *
+     * @return the corners of the hull, or null if it has no area
+     */
+    private static double[] hull(double[] points, int n) {
+        // Sort the points left to right, then go round them keeping only
+        // the corners that turn the same way
+        Integer[] order = new Integer[n / 2];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        double[] sorted = points;
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> sorted[2 * i])
+                                     .thenComparingDouble(i -> sorted[2 * i + 1]));
+        double[] hull = new double[2 * (order.length + 1)];
+        int h = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int floor = h;
+            for (int k = 0; k < order.length; k++) {
+                int i = order[pass == 0 ? k : order.length - 1 - k];
+                double x = points[2 * i];
+                double y = points[2 * i + 1];
+                while (h >= floor + 4
+                        && (hull[h - 2] - hull[h - 4]) * (y - hull[h - 3])
+                         - (hull[h - 1] - hull[h - 3]) * (x - hull[h - 4]) <= 0) {
+                    h -= 2;
+                }
+                hull[h++] = x;
+                hull[h++] = y;
+            }
+            // The last point is the first of the next pass
+            h -= 2;
+        }
+        return h < 6 ? null : Arrays.copyOf(hull, h);
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Contact - two shapes found overlapping.
+     */
+    public static class Contact {
+        private final Object shape;
+        private final Object other;
+
+        Contact(Canvas.ShapeEntry shapeEntry, Canvas.ShapeEntry otherEntry) {
+            this(shapeEntry.referenceObject, otherEntry.referenceObject);
+        }
+
+        private Contact(Object shape, Object other) {
+            this.shape = shape;
+            this.other = other;
+        }
+
+        /**
+         * Get the first shape. For a handler added for one shape, this is
+         * that shape; otherwise it is the one drawn underneath.
+         *
+         * @return the object that identifies the shape
+         */
+        public Object getShape() {
+            return shape;
+        }
+
+        /**
+         * Get the shape the first shape collided with.
+         *
+         * @return the object that identifies the shape
+         */
+        public Object getOther() {
+            return other;
+        }
+
+        /**
+         * Get the shape that one of the shapes collided with.
+         *
+         * @param referenceObject one of the two shapes
+         * @return the other shape
+         */
+        public Object getOther(Object referenceObject) {
+            return referenceObject == shape ? other : shape;
+        }
+
+        /**
+         * Get the contact with its shapes the other way round.
+         */
+        Contact swapped() {
+            return new Contact(other, shape);
+        }
+
+        @Override
+        public String toString() {
+            return "Contact " + shape + " with " + other;
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Body - a collidable shape's geometry, kept with the
+     * shape's entry on the canvas. The geometry is only found again once
+     * the shape has been updated, which gives it new bounds.
+     */
+    static class Body {
+        final Canvas.ShapeEntry entry;
+
+        // The bounds the shape had when it was last checked, and when its
+        // geometry was found
+        Rectangle bounds;
+        private Rectangle prepared;
+
+        private int kind;
+        private double cx;
+        private double cy;
+        private double r;
+        private double[][] pieces;
+
+        Body(Canvas.ShapeEntry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Find the shape's geometry from its outline, if not done already.
+         */
+        void prepare() {
+            if (prepared == bounds) {
+                return;
+            }
+            prepared = bounds;
+
+            Canvas.ShapeOutline outlineFunction = entry.outlineFunction;
+            Shape outline = outlineFunction == null ? null : outlineFunction.getOutline();
+            if (outline == null) {
+                kind = BOX;
+                int left = bounds.x;
+                int top = bounds.y;
+                int right = bounds.x + bounds.width;
+                int bottom = bounds.y + bounds.height;
+                pieces = new double[][] {{left, top, right, top, right, bottom, left, bottom}};
+            } else if (outline instanceof Ellipse2D
+                    && ((Ellipse2D) outline).getWidth() == ((Ellipse2D) outline).getHeight()) {
+                Ellipse2D circle = (Ellipse2D) outline;
+                kind = CIRCLE;
+                cx = circle.getCenterX();
+                cy = circle.getCenterY();
+                r = circle.getWidth() / 2;
+            } else if (outline instanceof Arc2D && ((Arc2D) outline).getArcType() == Arc2D.PIE
+                    && ((Arc2D) outline).getWidth() == ((Arc2D) outline).getHeight()
+                    && Math.abs(((Arc2D) outline).getAngleExtent()) < 360) {
+                kind = POLYGONS;
+                pieces = pie((Arc2D) outline);
+            } else {
+                kind = POLYGONS;
+                double[] hull = convex(outline);
+                pieces = hull == null ? new double[0][] : new double[][] {hull};
+            }
+        }
+    }
+}
@@ -0,0 +1,726 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A FrameRecorder saves every frame a canvas shows, to make a recording of
+ * an animation. Recordings are started and stopped with the canvas's
+ * startRecording() and stopRecording() methods.
+ *
+ * Frames are copied as they are shown and written out by a thread of the
+ * recorder's own, so recording never holds up drawing. If the writing falls
+ * behind, frames that arrive while all the recorder's frame buffers are full
+ * are skipped instead of waiting for room.
+ *
+ * Recordings can be saved as an animated GIF, an animated PNG (APNG), or a
+ * stream of raw frames for a video encoder. Raw frames are the red, green
+ * and blue bytes of each pixel, row by row, so for an 800 by 600 canvas
+ * drawing 30 frames a second the stream can be turned into a video with:
+ *
+ * <pre>
+ * ffmpeg -f rawvideo -pix_fmt rgb24 -s 800x600 -r 30 -i frames.rgb movie.mp4
+ * </pre>
+ *
+ * GIF and APNG recordings keep the time between frames, and only store the
+ * part of each frame that changed. GIF frames with more than 256 colors are
+ * reduced to a fixed set of 252 colors.
+ *
+ * @version 2026.10.17
+ */
+public class FrameRecorder {
+    /**
+     * The kind of file a recording is saved as.
+     */
+    public enum Format {
+        /** An animated GIF */
+        GIF,
+        /** An animated PNG, which needs a file rather than a stream */
+        APNG,
+        /** Raw RGB frames, one after another */
+        RAW
+    }
+
+    // Frames copied but not yet written; more arriving than this are skipped
+    private static final int FRAME_BUFFERS = 8;
+    // Time given to the last frame of a recording with only one frame
+    private static final long LAST_FRAME_NANOS = 100_000_000L;
+
+    private final Format format;
+    private final int width;
+    private final int height;
+    private final WritableByteChannel channel;
+    private final boolean closeChannel;
+
+    private final BlockingQueue<Frame> freeFrames;
+    private final BlockingQueue<Frame> frames;
+    private final Frame end = new Frame(null);
+    private final Thread writer;
+    private volatile boolean finished = false;
+    // What stopped the writer thread: an IOException or RuntimeException
+    private volatile Exception failure;
+
+    private final AtomicLong framesCaptured = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesWritten = new AtomicLong();
+
+    // Used only by the writer thread
+    private OutputStream stream;
+    private Frame pending;
+    private long lastDelay = LAST_FRAME_NANOS;
+    private byte[] rgb;
+    private PngEncoder png;
+    private ByteBuffer chunkData;
+    private int sequence = 0;
+    private GifWriter gif;
+
+    /**
+     * Create a recorder and start its writer thread.
+     *
+     * @param channel the channel to save the recording to
+     * @param closeChannel true if the channel should be closed when the
+     * recording stops
+     * @param format the kind of file to save
+     * @param width the width of the canvas
+     * @param height the height of the canvas
+     */
+    FrameRecorder(WritableByteChannel channel, boolean closeChannel, Format format,
+                  int width, int height) {
+        if (format == Format.APNG && !(channel instanceof SeekableByteChannel)) {
+            throw new IllegalArgumentException("APNG recordings must be saved to a file");
+        }
+
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+
+        freeFrames = new ArrayBlockingQueue<>(FRAME_BUFFERS);
+        frames = new ArrayBlockingQueue<>(FRAME_BUFFERS + 1);
+        for (int i = 0; i < FRAME_BUFFERS; i++) {
+            freeFrames.add(new Frame(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)));
+        }
+
+        writer = new Thread(this::writeFrames, "Frame Recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Determine the kind of file being saved.
+     *
+     * @return the format of the recording
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Determine how many frames have been recorded.
+     *
+     * @return the number of frames copied for writing
+     */
+    public long getFramesCaptured() {
+        return framesCaptured.get();
+    }
+
+    /**
+     * Determine how many frames were skipped because the writing had fallen
+     * behind.
+     *
+     * @return the number of frames skipped
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    /**
+     * Determine how many frames have been saved. Frames that show no change
+     * from the one before are not saved separately in GIF and APNG files.
+     *
+     * @return the number of frames saved
+     */
+    public long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    /**
+     * Copy a frame for writing, or skip it if there is no free buffer to
+     * copy it into. This never waits.
+     *
+     * @param image the picture of the canvas
+     */
+    void capture(BufferedImage image) {
+        if (finished || failure != null) {
+            return;
+        }
+
+        Frame frame = freeFrames.poll();
+        if (frame == null) {
+            framesDropped.incrementAndGet();
+            return;
+        }
+
+        image.getRaster().getDataElements(0, 0, width, height, frame.pixels);
+        frame.time = System.nanoTime();
+        frames.add(frame);
+        framesCaptured.incrementAndGet();
+    }
+
+    /**
+     * Write the frames already captured, finish the file and wait for the
+     * writer thread to end.
+     *
+     * @throws IOException if the recording could not be saved
+     * @throws RuntimeException if writing a frame failed in some other way,
+     * such as a bug in encoding it
+     */
+    void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            frames.add(end);
+        }
+
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    /**
+     * Write frames as they arrive until the recording is finished.
+     */
+    private void writeFrames() {
+        try {
+            try {
+                start();
+                Frame frame;
+                while ((frame = takeFrame()) != end) {
+                    add(frame);
+                }
+                if (pending != null) {
+                    write(pending, lastDelay);
+                }
+                stop();
+            } finally {
+                if (png != null) {
+                    png.close();
+                }
+                if (closeChannel) {
+                    channel.close();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Wait for the next captured frame.
+     */
+    private Frame takeFrame() {
+        while (true) {
+            try {
+                return frames.take();
+            } catch (InterruptedException e) {
+                // Only finish() ends the recording
+            }
+        }
+    }
+
+    /**
+     * Write the start of the file.
+     */
+    private void start() throws IOException {
+        switch (format) {
+            case GIF:
+                stream = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+                gif = new GifWriter(stream, width, height);
+                break;
+            case APNG:
+                png = new PngEncoder(1, PngEncoder.Filter.UP);
+                chunkData = ByteBuffer.allocate(26);
+                png.writeSignature(channel);
+                png.writeHeader(channel, width, height);
+                writeAnimationControl(0);
+                break;
+            default:
+                stream = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+                rgb = new byte[width * 3];
+                break;
+        }
+    }
+
+    /**
+     * Write the end of the file.
+     */
+    private void stop() throws IOException {
+        switch (format) {
+            case GIF:
+                gif.finish();
+                stream.flush();
+                break;
+            case APNG:
+                png.writeEnd(channel);
+
+                // Now the number of frames is known, fill it in
+                ((SeekableByteChannel) channel).position(8 + 25);
+                writeAnimationControl((int) framesWritten.get());
+                break;
+            default:
+                stream.flush();
+                break;
+        }
+    }
+
+    /**
+     * Take in a captured frame. Raw frames are written right away. GIF and
+     * APNG frames are held until the next frame that differs arrives, since
+     * the time until then is saved with the frame.
+     */
+    private void add(Frame frame) throws IOException {
+        if (format == Format.RAW) {
+            writeRaw(frame);
+            freeFrames.add(frame);
+            return;
+        }
+
+        if (pending == null) {
+            frame.changed.setBounds(0, 0, width, height);
+        } else if (!findChanges(pending, frame)) {
+            // Nothing changed, so the pending frame just shows for longer
+            freeFrames.add(frame);
+            return;
+        } else {
+            lastDelay = frame.time - pending.time;
+            write(pending, lastDelay);
+            freeFrames.add(pending);
+        }
+        pending = frame;
+    }
+
+    /**
+     * Find the area where a frame differs from the one before it.
+     *
+     * @return true if anything changed
+     */
+    private boolean findChanges(Frame before, Frame after) {
+        int[] a = before.pixels;
+        int[] b = after.pixels;
+
+        int top = 0;
+        while (top < height && Arrays.mismatch(a, top * width, (top + 1) * width,
+                                               b, top * width, (top + 1) * width) < 0) {
+            top++;
+        }
+        if (top == height) {
+            return false;
+        }
+
+        int bottom = height - 1;
+        while (Arrays.mismatch(a, bottom * width, (bottom + 1) * width,
+                               b, bottom * width, (bottom + 1) * width) < 0) {
+            bottom--;
+        }
+
+        int left = width;
+        int right = -1;
+        for (int y = top; y <= bottom; y++) {
+            int row = y * width;
+            int first = Arrays.mismatch(a, row, row + width, b, row, row + width);
+            if (first < 0) {
+                continue;
+            }
+            left = Math.min(left, first);
+
+            int last = width - 1;
+            while (last > right && a[row + last] == b[row + last]) {
+                last--;
+            }
+            right = Math.max(right, last);
+        }
+
+        after.changed.setBounds(left, top, right - left + 1, bottom - top + 1);
+        return true;
+    }
+
+    /**
+     * Write a GIF or APNG frame.
+     *
+     * @param delay the time until the next frame, in nanoseconds
+     */
+    private void write(Frame frame, long delay) throws IOException {
+        if (format == Format.GIF) {
+            gif.writeFrame(frame.pixels, width, frame.changed, delay);
+        } else {
+            writeApngFrame(frame, delay);
+        }
+        framesWritten.incrementAndGet();
+    }
+
+    /**
+     * Write a frame as raw RGB bytes.
+     */
+    private void writeRaw(Frame frame) throws IOException {
+        int[] pixels = frame.pixels;
+        for (int y = 0; y < height; y++) {
+            int p = y * width;
+            int i = 0;
+            for (int x = 0; x < width; x++) {
+                int color = pixels[p++];
+                rgb[i++] = (byte) (color >> 16);
+                rgb[i++] = (byte) (color >> 8);
+                rgb[i++] = (byte) color;
+            }
+            stream.write(rgb);
+        }
+        framesWritten.incrementAndGet();
+    }
+
+    /**
+     * Write the animation control chunk, which gives the number of frames
+     * and says to play them forever.
+     */
+    private void writeAnimationControl(int frameCount) throws IOException {
+        chunkData.clear();
+        chunkData.putInt(frameCount);
+        chunkData.putInt(0);
+        chunkData.flip();
+        png.writeChunk(channel, "acTL", chunkData);
+    }
+
+    /**
+     * Write an APNG frame: a frame control chunk giving the changed area
+     * and how long to show it, then the changed area's image data.
+     */
+    private void writeApngFrame(Frame frame, long delay) throws IOException {
+        Rectangle area = frame.changed;
+        long millis = Math.max(1, Math.min(65535, (delay + 500_000) / 1_000_000));
+
+        chunkData.clear();
+        chunkData.putInt(sequence++);
+        chunkData.putInt(area.width);
+        chunkData.putInt(area.height);
+        chunkData.putInt(area.x);
+        chunkData.putInt(area.y);
+        chunkData.putShort((short) millis);
+        chunkData.putShort((short) 1000);
+        chunkData.put((byte) 0);    // leave the frame in place
+        chunkData.put((byte) 0);    // replace the pixels underneath
+        chunkData.flip();
+        png.writeChunk(channel, "fcTL", chunkData);
+
+        // The first frame is also the picture shown by plain PNG viewers
+        BufferedImage image = frame.image.getSubimage(area.x, area.y, area.width, area.height);
+        if (framesWritten.get() == 0) {
+            png.writeImageData(image, channel, -1);
+        } else {
+            sequence = png.writeImageData(image, channel, sequence);
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Frame - a buffer holding one captured frame.
+     */
+    private static class Frame {
+        final BufferedImage image;
+        final int[] pixels;
+        final Rectangle changed = new Rectangle();
+        long time;
+
+        Frame(BufferedImage image) {
+            this.image = image;
+            this.pixels = image == null ? null
+                    : ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class GifWriter - writes frames to an animated GIF, each with a
+     * color table of its own.
+     */
+    private static class GifWriter {
+        private static final int MAX_CODES = 4096;
+        private static final int HASH_SIZE = 8192;
+
+        private final OutputStream out;
+        private byte[] indices = new byte[0];
+        private final int[] palette = new int[256];
+        private final int[] colorKeys = new int[1024];
+        private final byte[] colorValues = new byte[1024];
+
+        // LZW compression state
+        private final int[] codeKeys = new int[HASH_SIZE];
+        private final short[] codeValues = new short[HASH_SIZE];
+        private final byte[] block = new byte[256];
+        private int blockUsed;
+        private int bitBuffer;
+        private int bitCount;
+
+        GifWriter(OutputStream out, int width, int height) throws IOException {
+            this.out = out;
+
+            out.write(new byte[] {'G', 'I', 'F', '8', '9', 'a'});
+            writeShort(width);
+            writeShort(height);
+            out.write(0);   // no global color table
+            out.write(0);
+            out.write(0);
+
+            // Loop forever
+            out.write(new byte[] {0x21, (byte) 0xff, 11,
+                    'N', 'E', 'T', 'S', 'C', 'A', 'P', 'E', '2', '.', '0', 3, 1, 0, 0, 0});
+        }
+
+        /**
+         * Write the changed area of a frame.
+         */
+        void writeFrame(int[] pixels, int scan, Rectangle area, long delay) throws IOException {
+            int colors = indexColors(pixels, scan, area);
+            int tableBits = 1;
+            while ((1 << tableBits) < colors) {
+                tableBits++;
+            }
+
+            // Graphic control: leave the frame in place, and the delay in
+            // hundredths of a second
+            int hundredths = (int) Math.max(2, Math.min(65535, (delay + 5_000_000) / 10_000_000));
+            out.write(0x21);
+            out.write(0xf9);
+            out.write(4);
+            out.write(1 << 2);
+            writeShort(hundredths);
+            out.write(0);
+            out.write(0);
+
+            // Image descriptor and its color table
+            out.write(0x2c);
+            writeShort(area.x);
+            writeShort(area.y);
+            writeShort(area.width);
+            writeShort(area.height);
+            out.write(0x80 | (tableBits - 1));
+            for (int i = 0; i < (1 << tableBits); i++) {
+                int color = i < colors ? palette[i] : 0;
+                out.write(color >> 16);
+                out.write(color >> 8);
+                out.write(color);
+            }
+
+            compress(Math.max(2, tableBits), area.width * area.height);
+        }
+
+        /**
+         * Write the end of the file.
+         */
+        void finish() throws IOException {
+            out.write(0x3b);
+        }
+
+        /**
+         * Turn the pixels of an area into color table indices, using the
+         * exact colors if there are few enough of them.
+         *
+         * @return the number of colors in the table
+         */
+        private int indexColors(int[] pixels, int scan, Rectangle area) {
+            int count = area.width * area.height;
+            if (indices.length < count) {
+                indices = new byte[count];
+            }
+
+            Arrays.fill(colorKeys, 0);
+            int colors = 0;
+            int lastColor = -1;
+            byte lastIndex = 0;
+            int i = 0;
+
+            for (int y = area.y; y < area.y + area.height; y++) {
+                int p = y * scan + area.x;
+                for (int x = 0; x < area.width; x++) {
+                    int color = pixels[p++] & 0xffffff;
+                    if (color != lastColor) {
+                        int slot = (color * 0x9e3779b1) >>> 22;
+                        while (colorKeys[slot] != 0 && colorKeys[slot] != (color | 0x1000000)) {
+                            slot = (slot + 1) & (colorKeys.length - 1);
+                        }
+                        if (colorKeys[slot] == 0) {
+                            if (colors == 256) {
+                                return cubeColors(pixels, scan, area);
+                            }
+                            colorKeys[slot] = color | 0x1000000;
+                            colorValues[slot] = (byte) colors;
+                            palette[colors++] = color;
+                        }
+                        lastColor = color;
+                        lastIndex = colorValues[slot];
+                    }
+                    indices[i++] = lastIndex;
+                }
+            }
+            return colors;
+        }
+
+        /**
+         * Turn the pixels of an area into indices of a fixed table of 252
+         * colors: 6 levels of red and blue and 7 of green.
+         *
+         * @return the number of colors in the table
+         */
+        private int cubeColors(int[] pixels, int scan, Rectangle area) {
+            for (int r = 0; r < 6; r++) {
+                for (int g = 0; g < 7; g++) {
+                    for (int b = 0; b < 6; b++) {
+                        palette[r * 42 + g * 6 + b] =
+                                (r * 255 / 5) << 16 | (g * 255 / 6) << 8 | (b * 255 / 5);
+                    }
+                }
+            }
+
+            int i = 0;
+            for (int y = area.y; y < area.y + area.height; y++) {
+                int p = y * scan + area.x;
+                for (int x = 0; x < area.width; x++) {
+                    int color = pixels[p++];
+                    int r = ((color >> 16) & 0xff) * 5 + 127;
+                    int g = ((color >> 8) & 0xff) * 6 + 127;
+                    int b = (color & 0xff) * 5 + 127;
+                    indices[i++] = (byte) ((r / 255) * 42 + (g / 255) * 6 + (b / 255));
+                }
+            }
+            return 252;
+        }
+
+        /**
+         * Compress the color indices with LZW and write them in blocks.
+         */
+        private void compress(int minCodeSize, int count) throws IOException {
+            int clearCode = 1 << minCodeSize;
+            int endCode = clearCode + 1;
+            int codeSize = minCodeSize + 1;
+            int nextCode = endCode + 1;
+
+            out.write(minCodeSize);
+            blockUsed = 0;
+            bitBuffer = 0;
+            bitCount = 0;
+            Arrays.fill(codeKeys, 0);
+
+            writeCode(clearCode, codeSize);
+            int prefix = indices[0] & 0xff;
+
+            for (int i = 1; i < count; i++) {
+                int index = indices[i] & 0xff;
+                int key = (prefix << 8 | index) + 1;
+
+                int slot = (key * 0x9e3779b1) >>> 19;
+                while (codeKeys[slot] != 0 && codeKeys[slot] != key) {
+                    slot = (slot + 1) & (HASH_SIZE - 1);
+                }
+                if (codeKeys[slot] == key) {
+                    prefix = codeValues[slot];
+                    continue;
+                }
+
+                writeCode(prefix, codeSize);
+                if (nextCode >= (1 << codeSize) && codeSize < 12) {
+                    codeSize++;
+                }
+
+                if (nextCode < MAX_CODES - 1) {
+                    codeKeys[slot] = key;
+                    codeValues[slot] = (short) nextCode++;
+                } else {
+                    // The table is full, so start a new one
+                    writeCode(clearCode, codeSize);
+                    Arrays.fill(codeKeys, 0);
+                    codeSize = minCodeSize + 1;
+                    nextCode = endCode + 1;
+                }
+                prefix = index;
+            }
+
+            writeCode(prefix, codeSize);
+            if (nextCode >= (1 << codeSize) && codeSize < 12) {
+                codeSize++;
+            }
+            writeCode(endCode, codeSize);
+
+            if (bitCount > 0) {
+                writeByte(bitBuffer);
+            }
+            flushBlock();
+            out.write(0);
+        }
+
+        /**
+         * Add a code to the compressed data, lowest bit first.
+         */
+        private void writeCode(int code, int size) throws IOException {
+            bitBuffer |= code << bitCount;
+            bitCount += size;
+            while (bitCount >= 8) {
+                writeByte(bitBuffer);
+                bitBuffer >>>= 8;
+                bitCount -= 8;
+            }
+        }
+
+        /**
+         * Add a byte to the current data block, writing the block when it
+         * is full.
+         */
+        private void writeByte(int b) throws IOException {
+            block[++blockUsed] = (byte) b;
+            if (blockUsed == 255) {
+                flushBlock();
+            }
+        }
+
+        /**
+         * Write the current data block with its length in front.
+         */
+        private void flushBlock() throws IOException {
+            if (blockUsed > 0) {
+                block[0] = (byte) blockUsed;
+                out.write(block, 0, blockUsed + 1);
+                blockUsed = 0;
+            }
+        }
+
+        /**
+         * Write a two byte number, low byte first.
+         */
+        private void writeShort(int value) throws IOException {
+            out.write(value);
+            out.write(value >> 8);
+        }
+    }
+}
@@ -0,0 +1,454 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PngEncoder writes images as PNG files. Rows are filtered and compressed
+ * one at a time and the compressed data is written out as it is made, so
+ * the whole file is never held in memory. The buffers used along the way
+ * are kept and reused for the next image.
+ *
+ * The compression level trades file size for speed: 0 stores the picture
+ * without compressing it, 1 is fastest, and 9 makes the smallest files.
+ *
+ * A PngEncoder may only be used by one thread at a time. Close it when it
+ * is no longer needed, to free the memory the compressor holds outside the
+ * Java heap.
+ *
+ * @version 2026.10.17
+ */
+public class PngEncoder implements AutoCloseable {
+    /**
+     * The way each row is prepared before it is compressed.
+     */
+    public enum Filter {
+        /** Rows are compressed as they are */
+        NONE,
+        /** Each pixel is stored as its difference from the pixel to its left */
+        SUB,
+        /** Each pixel is stored as its difference from the pixel above it */
+        UP,
+        /** Each pixel is stored as its difference from a guess made from the
+         *  pixels to the left, above, and above left */
+        PAETH,
+        /** Each row uses whichever filter looks like it will compress best */
+        ADAPTIVE
+    }
+
+    private static final byte[] SIGNATURE = {
+        (byte) 137, 80, 78, 71, 13, 10, 26, 10
+    };
+    private static final int CHUNK_DATA_SIZE = 64 * 1024;
+    private static final int BYTES_PER_PIXEL = 3;
+
+    private int level;
+    private Filter filter;
+
+    // Reused from one image to the next
+    private final Deflater deflater = new Deflater();
+    private final CRC32 crc = new CRC32();
+    private final byte[] chunk = new byte[CHUNK_DATA_SIZE + 12];
+    private final ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk);
+    private int chunkUsed;
+    private int dataStart;
+    private int dataSequence;
+    private int[] pixels = new int[0];
+    private byte[] previousRow = new byte[0];
+    private byte[] currentRow = new byte[0];
+    private byte[][] filteredRows = new byte[Filter.values().length][0];
+    private boolean closed = false;
+
+    /**
+     * Create a PNG encoder with the default compression level and adaptive
+     * filtering, which give files about the size ImageIO makes.
+     */
+    public PngEncoder() {
+        this(6, Filter.ADAPTIVE);
+    }
+
+    /**
+     * Create a PNG encoder.
+     *
+     * @param level the compression level, from 0 (none) to 9 (smallest)
+     * @param filter the way rows are filtered before compression
+     */
+    public PngEncoder(int level, Filter filter) {
+        setCompression(level, filter);
+    }
+
+    /**
+     * Change the compression used for the next image.
+     *
+     * @param level the compression level, from 0 (none) to 9 (smallest)
+     * @param filter the way rows are filtered before compression
+     */
+    public void setCompression(int level, Filter filter) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Compression level must be 0 to 9");
+        }
+
+        this.level = level;
+        this.filter = filter;
+    }
+
+    /**
+     * Free the compressor. The encoder can't be used after this.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            deflater.end();
+        }
+    }
+
+    /**
+     * Write an image as a PNG file to a stream. The stream is not closed.
+     *
+     * @param image the image to write
+     * @param out the stream to write to
+     */
+    public void encode(BufferedImage image, OutputStream out) throws IOException {
+        encode(image, Channels.newChannel(out));
+    }
+
+    /**
+     * Write an image as a PNG file to a channel, such as a FileChannel. The
+     * channel is not closed.
+     *
+     * @param image the image to write
+     * @param out the channel to write to
+     */
+    public void encode(BufferedImage image, WritableByteChannel out) throws IOException {
+        writeSignature(out);
+        writeHeader(out, image.getWidth(), image.getHeight());
+        writeImageData(image, out, -1);
+        writeEnd(out);
+    }
+
+    /**
+     * Write the bytes every PNG file starts with.
+     *
+     * @param out the channel to write to
+     */
+    void writeSignature(WritableByteChannel out) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Encoder has been closed");
+        }
+
+        writeFully(out, ByteBuffer.wrap(SIGNATURE));
+    }
+
+    /**
+     * Write the header chunk for an image of a given size.
+     *
+     * @param out the channel to write to
+     * @param width the width of the image
+     * @param height the height of the image
+     */
+    void writeHeader(WritableByteChannel out, int width, int height) throws IOException {
+        // Size, 8 bits per sample, RGB color, no interlacing
+        startChunk();
+        putInt(width);
+        putInt(height);
+        chunk[8 + chunkUsed++] = 8;
+        chunk[8 + chunkUsed++] = 2;
+        chunk[8 + chunkUsed++] = 0;
+        chunk[8 + chunkUsed++] = 0;
+        chunk[8 + chunkUsed++] = 0;
+        writeChunk(out, "IHDR");
+    }
+
+    /**
+     * Write a chunk holding the bytes left in a buffer.
+     *
+     * @param out the channel to write to
+     * @param type the four letter chunk type
+     * @param data the chunk's contents
+     */
+    void writeChunk(WritableByteChannel out, String type, ByteBuffer data) throws IOException {
+        startChunk();
+        chunkUsed = data.remaining();
+        data.get(chunk, 8, chunkUsed);
+        writeChunk(out, type);
+    }
+
+    /**
+     * Write the chunk that ends a PNG file.
+     *
+     * @param out the channel to write to
+     */
+    void writeEnd(WritableByteChannel out) throws IOException {
+        startChunk();
+        writeChunk(out, "IEND");
+    }
+
+    /**
+     * Compress an image and write it as image data chunks. For the frames
+     * of an animated PNG after the first, the data goes in numbered frame
+     * data chunks instead.
+     *
+     * @param image the image to write
+     * @param out the channel to write to
+     * @param sequence the number of the first frame data chunk, or -1 to
+     * write plain image data chunks
+     * @return the number for the next animation chunk
+     */
+    int writeImageData(BufferedImage image, WritableByteChannel out, int sequence)
+            throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rowBytes = width * BYTES_PER_PIXEL;
+        prepareBuffers(width, rowBytes);
+
+        // Picture data, compressed a row at a time
+        dataSequence = sequence;
+        deflater.reset();
+        deflater.setLevel(level);
+        startDataChunk();
+
+        Arrays.fill(previousRow, 0, rowBytes, (byte) 0);
+        for (int y = 0; y < height; y++) {
+            readRow(image, y, width);
+            byte[] row = filterRow(rowBytes);
+
+            deflater.setInput(row, 0, rowBytes + 1);
+            while (!deflater.needsInput()) {
+                deflate(out);
+            }
+
+            byte[] swap = previousRow;
+            previousRow = currentRow;
+            currentRow = swap;
+        }
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate(out);
+        }
+        if (chunkUsed > dataStart) {
+            writeDataChunk(out);
+        }
+
+        return dataSequence;
+    }
+
+    /**
+     * Make sure the row buffers are big enough for an image width.
+     */
+    private void prepareBuffers(int width, int rowBytes) {
+        if (pixels.length < width) {
+            pixels = new int[width];
+        }
+        if (currentRow.length < rowBytes) {
+            previousRow = new byte[rowBytes];
+            currentRow = new byte[rowBytes];
+            for (int i = 0; i < filteredRows.length; i++) {
+                filteredRows[i] = new byte[rowBytes + 1];
+            }
+        }
+    }
+
+    /**
+     * Copy one row of the image into the current row as red, green and blue
+     * bytes.
+     */
+    private void readRow(BufferedImage image, int y, int width) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+            image.getRaster().getDataElements(0, y, width, 1, pixels);
+        } else {
+            image.getRGB(0, y, width, 1, pixels, 0, width);
+        }
+
+        int i = 0;
+        for (int x = 0; x < width; x++) {
+            int rgb = pixels[x];
+            currentRow[i++] = (byte) (rgb >> 16);
+            currentRow[i++] = (byte) (rgb >> 8);
+            currentRow[i++] = (byte) rgb;
+        }
+    }
+
+    /**
+     * Filter the current row.
+     *
+     * @return the filtered row, starting with the filter type byte
+     */
+    private byte[] filterRow(int rowBytes) {
+        if (filter != Filter.ADAPTIVE) {
+            return applyFilter(filter, rowBytes);
+        }
+
+        // Pick the filter whose output has the smallest differences
+        byte[] best = null;
+        long bestScore = Long.MAX_VALUE;
+        for (Filter f : Filter.values()) {
+            if (f == Filter.ADAPTIVE) {
+                continue;
+            }
+
+            byte[] row = applyFilter(f, rowBytes);
+            long score = 0;
+            for (int i = 1; i <= rowBytes && score < bestScore; i++) {
+                score += Math.abs(row[i]);
+            }
+            if (score < bestScore) {
+                bestScore = score;
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Filter the current row with a given filter.
+     */
+    private byte[] applyFilter(Filter f, int rowBytes) {
+        byte[] out = filteredRows[f.ordinal()];
+        byte[] raw = currentRow;
+        byte[] prior = previousRow;
+        int bpp = BYTES_PER_PIXEL;
+
+        switch (f) {
+            case SUB:
+                out[0] = 1;
+                for (int i = 0; i < rowBytes; i++) {
+                    int left = i >= bpp ? raw[i - bpp] : 0;
+                    out[i + 1] = (byte) (raw[i] - left);
+                }
+                break;
+            case UP:
+                out[0] = 2;
+                for (int i = 0; i < rowBytes; i++) {
+                    out[i + 1] = (byte) (raw[i] - prior[i]);
+                }
+                break;
+            case PAETH:
+                out[0] = 4;
+                for (int i = 0; i < rowBytes; i++) {
+                    int a = i >= bpp ? raw[i - bpp] & 0xff : 0;
+                    int b = prior[i] & 0xff;
+                    int c = i >= bpp ? prior[i - bpp] & 0xff : 0;
+                    out[i + 1] = (byte) (raw[i] - paeth(a, b, c));
+                }
+                break;
+            default:
+                out[0] = 0;
+                System.arraycopy(raw, 0, out, 1, rowBytes);
+                break;
+        }
+        return out;
+    }
+
+    /**
+     * Guess a byte from its neighbors to the left, above, and above left.
+     */
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+
+        if (pa <= pb && pa <= pc) {
+            return a;
+        } else if (pb <= pc) {
+            return b;
+        } else {
+            return c;
+        }
+    }
+
+    /**
+     * Compress what the deflater can into the current chunk, writing the
+     * chunk out when it is full.
+     */
+    private void deflate(WritableByteChannel out) throws IOException {
+        chunkUsed += deflater.deflate(chunk, 8 + chunkUsed, CHUNK_DATA_SIZE - chunkUsed);
+        if (chunkUsed == CHUNK_DATA_SIZE) {
+            writeDataChunk(out);
+            startDataChunk();
+        }
+    }
+
+    /**
+     * Start filling a new chunk.
+     */
+    private void startChunk() {
+        chunkUsed = 0;
+    }
+
+    /**
+     * Start filling a new image data chunk, beginning with its sequence
+     * number if it is an animation frame.
+     */
+    private void startDataChunk() {
+        startChunk();
+        if (dataSequence >= 0) {
+            putInt(dataSequence++);
+        }
+        dataStart = chunkUsed;
+    }
+
+    /**
+     * Write out the current image data chunk.
+     */
+    private void writeDataChunk(WritableByteChannel out) throws IOException {
+        writeChunk(out, dataStart > 0 ? "fdAT" : "IDAT");
+    }
+
+    /**
+     * Add a 4 byte number to the current chunk.
+     */
+    private void putInt(int value) {
+        int i = 8 + chunkUsed;
+        chunk[i] = (byte) (value >>> 24);
+        chunk[i + 1] = (byte) (value >>> 16);
+        chunk[i + 2] = (byte) (value >>> 8);
+        chunk[i + 3] = (byte) value;
+        chunkUsed += 4;
+    }
+
+    /**
+     * Write out the current chunk with its length, type and check code.
+     */
+    private void writeChunk(WritableByteChannel out, String type) throws IOException {
+        int length = chunkUsed;
+
+        chunk[0] = (byte) (length >>> 24);
+        chunk[1] = (byte) (length >>> 16);
+        chunk[2] = (byte) (length >>> 8);
+        chunk[3] = (byte) length;
+        for (int i = 0; i < 4; i++) {
+            chunk[4 + i] = (byte) type.charAt(i);
+        }
+
+        crc.reset();
+        crc.update(chunk, 4, length + 4);
+        int check = (int) crc.getValue();
+        int end = 8 + length;
+        chunk[end] = (byte) (check >>> 24);
+        chunk[end + 1] = (byte) (check >>> 16);
+        chunk[end + 2] = (byte) (check >>> 8);
+        chunk[end + 3] = (byte) check;
+
+        chunkBuffer.clear();
+        chunkBuffer.limit(end + 4);
+        writeFully(out, chunkBuffer);
+    }
+
+    /**
+     * Write all of a buffer to a channel.
+     */
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
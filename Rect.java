@@ -1,5 +1,6 @@
 import java.awt.Graphics;
 import java.awt.Color;
+import java.awt.Rectangle;
 
 /**
  * A rectangle that can be manipulated and that draws itself on a canvas.
@@ -16,6 +17,7 @@ public class Rect
     private int ySize;
     private Color color;
     private boolean isVisible;
+    private Canvas canvas;
 
     /**
      * Create a new rectangle at default position with default color.
@@ -30,12 +32,40 @@ public class Rect
         isVisible = false;
     }
 
+    /**
+     * Create a rectangle with a given position, size and color.
+     * @param x the x location of the rectangle
+     * @param y the y location of the rectangle
+     * @param width the width of the rectangle
+     * @param height the height of the rectangle
+     * @param color the color of the rectangle
+     */
+    Rect(int x, int y, int width, int height, Color color)
+    {
+        xPosition = x;
+        yPosition = y;
+        xSize = width;
+        ySize = height;
+        this.color = color;
+    }
+
     /**
      * Make this rectangle visible. If it was already visible, do nothing.
      */
     public void makeVisible()
+    {
+        makeVisible(Canvas.getCanvas());
+    }
+
+    /**
+     * Make this rectangle visible on a given canvas. If it was already visible,
+     * do nothing.
+     * @param canvas the canvas to draw the rectangle on
+     */
+    public void makeVisible(Canvas canvas)
     {
         if (!isVisible) {
+            this.canvas = canvas;
             isVisible = true;
             add();
         }
@@ -92,6 +122,7 @@ public class Rect
     public void moveHorizontal(int distance)
     {
         xPosition += distance;
+        update();
     }
 
     /**
@@ -102,6 +133,73 @@ public class Rect
     public void moveVertical(int distance)
     {
         yPosition += distance;
+        update();
+    }
+
+    /**
+     * Move the rectangle to a given (X, Y) coordinate
+     * @param x the new X location to move to
+     * @param y the new Y location to move to
+     */
+    public void setPosition(int x, int y)
+    {
+        xPosition = x;
+        yPosition = y;
+        update();
+    }
+
+    /**
+     * Determine the current X location of the rectangle
+     * @return the current X location of the rectangle
+     */
+    public int getX()
+    {
+        return xPosition;
+    }
+
+    /**
+     * Determine the current Y location of the rectangle
+     * @return the current Y location of the rectangle
+     */
+    public int getY()
+    {
+        return yPosition;
+    }
+
+    /**
+     * Determine the current width of the rectangle
+     * @return the current width of the rectangle
+     */
+    public int getWidth()
+    {
+        return xSize;
+    }
+
+    /**
+     * Determine the current height of the rectangle
+     * @return the current height of the rectangle
+     */
+    public int getHeight()
+    {
+        return ySize;
+    }
+
+    /**
+     * Determine if the rectangle should be showing on the canvas
+     * @return true if the shape is not hidden
+     */
+    public boolean isVisible()
+    {
+        return isVisible;
+    }
+
+    /**
+     * Determine the color of the rectangle
+     * @return the color the rectangle is drawn in
+     */
+    Color getColor()
+    {
+        return color;
     }
 
     /**
@@ -112,6 +210,7 @@ public class Rect
     {
         xSize = newSize;
         ySize = newSize;
+        update();
     }
 
     /**
@@ -123,6 +222,7 @@ public class Rect
     {
         xSize = newWidth;
         ySize = newHeight;
+        update();
     }
 
     /**
@@ -135,6 +235,7 @@ public class Rect
     public void changeColor(String newColor)
     {
         color = Canvas.getColor(newColor);
+        update();
     }
 
     /**
@@ -143,10 +244,11 @@ public class Rect
     private void add()
     {
         if(isVisible) {
-            Canvas canvas = Canvas.getCanvas();
             canvas.add(this, (g) -> {g.setColor(color);
                                      g.fillRect(xPosition, yPosition,
-                                                xSize, ySize);});
+                                                xSize, ySize);},
+                             () -> new Rectangle(xPosition, yPosition,
+                                                 xSize, ySize));
         }
     }
 
@@ -156,11 +258,20 @@ public class Rect
     private void remove()
     {
         if(isVisible) {
-            Canvas canvas = Canvas.getCanvas();
             canvas.remove(this);
         }
     }
 
+    /**
+     * Tell the canvas that the rectangle has changed.
+     */
+    private void update()
+    {
+        if(isVisible) {
+            canvas.update(this);
+        }
+    }
+
     /**
      * Get a text description of the rectangle.
      */
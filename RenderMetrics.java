@@ -0,0 +1,582 @@
+import java.beans.ConstructorProperties;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * RenderMetrics records how a canvas spends its time drawing and saving
+ * pictures, to help find out why a scene is slow. Metrics are turned on for
+ * a canvas with enableMetrics(); while they are off, the canvas doesn't
+ * time anything.
+ *
+ * For each frame shown, the time taken to draw it and the number of shapes
+ * drawn are recorded. The time spent waiting for the canvas's shapes lock
+ * is recorded where shapes are added, removed, updated and drawn, along
+ * with how many redraws adding and removing shapes asked for. Each save is
+ * timed, as is the PNG encoding part of it. For mouse and keyboard events,
+ * the time from the event arriving to its handlers finishing is recorded,
+ * and each collision check is timed.
+ *
+ * Values are kept in histograms with buckets about 3% wide, so recording
+ * a value is quick and takes no extra memory. The metrics can be read here,
+ * watched under "Canvas" in a JMX console such as JConsole, or printed
+ * every so often with startReport().
+ *
+ * @version 2026.10.17
+ */
+public class RenderMetrics {
+    /**
+     * ***********************************************************************
+     * Inner interface MetricsMXBean - the metrics as seen from a JMX
+     * console. Times are in milliseconds, except lock waits, which are in
+     * microseconds.
+     */
+    public interface MetricsMXBean {
+        public Summary getFrameTimes();
+        public Summary getShapesPerFrame();
+        public Summary getLockWaits();
+        public Summary getSaveTimes();
+        public Summary getEncodeTimes();
+        public Summary getInputTimes();
+        public Summary getCollisionTimes();
+        public long getRedrawsFromAdd();
+        public long getRedrawsFromRemove();
+        public String getReport();
+        public void reset();
+    }
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final String title;
+    private final int id = nextId.incrementAndGet();
+
+    private final Histogram frameTimes = new Histogram();
+    private final Histogram shapesPerFrame = new Histogram();
+    private final Histogram lockWaits = new Histogram();
+    private final Histogram saveTimes = new Histogram();
+    private final Histogram encodeTimes = new Histogram();
+    private final Histogram inputTimes = new Histogram();
+    private final Histogram collisionTimes = new Histogram();
+    private final LongAdder redrawsFromAdd = new LongAdder();
+    private final LongAdder redrawsFromRemove = new LongAdder();
+
+    private ObjectName beanName;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Create the metrics for a canvas.
+     *
+     * @param title the canvas's title, used to name the metrics
+     */
+    RenderMetrics(String title) {
+        this.title = title;
+    }
+
+    /**
+     * Record a frame that has been drawn.
+     *
+     * @param nanos the time taken to draw it
+     * @param shapes the number of shapes drawn
+     */
+    void frameDrawn(long nanos, long shapes) {
+        frameTimes.record(nanos);
+        shapesPerFrame.record(shapes);
+    }
+
+    /**
+     * Record the time spent waiting for the shapes lock.
+     *
+     * @param nanos the time from asking for the lock to getting it
+     */
+    void lockWaited(long nanos) {
+        lockWaits.record(nanos);
+    }
+
+    /**
+     * Record a redraw asked for by adding a shape.
+     */
+    void redrawFromAdd() {
+        redrawsFromAdd.increment();
+    }
+
+    /**
+     * Record a redraw asked for by removing a shape.
+     */
+    void redrawFromRemove() {
+        redrawsFromRemove.increment();
+    }
+
+    /**
+     * Record a picture that has been saved.
+     *
+     * @param saveNanos the time taken by the whole save
+     * @param encodeNanos the part of it spent encoding and writing the PNG
+     */
+    void saved(long saveNanos, long encodeNanos) {
+        saveTimes.record(saveNanos);
+        encodeTimes.record(encodeNanos);
+    }
+
+    /**
+     * Record a mouse or keyboard event that has been handled.
+     *
+     * @param nanos the time from the event arriving to its handlers
+     * finishing
+     */
+    void inputHandled(long nanos) {
+        inputTimes.record(nanos);
+    }
+
+    /**
+     * Record a check for collisions.
+     *
+     * @param nanos the time taken to find the shapes that overlap
+     */
+    void collisionsChecked(long nanos) {
+        collisionTimes.record(nanos);
+    }
+
+    /**
+     * Get the times taken to draw each frame, in nanoseconds.
+     *
+     * @return the frame times
+     */
+    public Histogram getFrameTimes() {
+        return frameTimes;
+    }
+
+    /**
+     * Get the number of shapes drawn for each frame.
+     *
+     * @return the shapes per frame
+     */
+    public Histogram getShapesPerFrame() {
+        return shapesPerFrame;
+    }
+
+    /**
+     * Get the times spent waiting for the canvas's shapes lock, in
+     * nanoseconds.
+     *
+     * @return the lock waits
+     */
+    public Histogram getLockWaits() {
+        return lockWaits;
+    }
+
+    /**
+     * Get the times taken by each save, in nanoseconds.
+     *
+     * @return the save times
+     */
+    public Histogram getSaveTimes() {
+        return saveTimes;
+    }
+
+    /**
+     * Get the times taken to encode and write each saved PNG, in
+     * nanoseconds.
+     *
+     * @return the encode times
+     */
+    public Histogram getEncodeTimes() {
+        return encodeTimes;
+    }
+
+    /**
+     * Get the times from each mouse or keyboard event arriving to its
+     * handlers finishing, in nanoseconds.
+     *
+     * @return the input times
+     */
+    public Histogram getInputTimes() {
+        return inputTimes;
+    }
+
+    /**
+     * Get the times taken by each check for collisions, in nanoseconds.
+     *
+     * @return the collision times
+     */
+    public Histogram getCollisionTimes() {
+        return collisionTimes;
+    }
+
+    /**
+     * Determine how many redraws adding shapes has asked for.
+     *
+     * @return the number of redraws
+     */
+    public long getRedrawsFromAdd() {
+        return redrawsFromAdd.sum();
+    }
+
+    /**
+     * Determine how many redraws removing shapes has asked for.
+     *
+     * @return the number of redraws
+     */
+    public long getRedrawsFromRemove() {
+        return redrawsFromRemove.sum();
+    }
+
+    /**
+     * Forget everything recorded so far.
+     */
+    public void reset() {
+        frameTimes.reset();
+        shapesPerFrame.reset();
+        lockWaits.reset();
+        saveTimes.reset();
+        encodeTimes.reset();
+        inputTimes.reset();
+        collisionTimes.reset();
+        redrawsFromAdd.reset();
+        redrawsFromRemove.reset();
+    }
+
+    /**
+     * Start printing a report of the metrics every so often, until
+     * stopReport() is called or the metrics are turned off.
+     *
+     * @param out where to print the report
+     * @param period the time between reports
+     * @param unit the unit of the period
+     */
+    public synchronized void startReport(PrintStream out, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+
+        stopReport();
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Canvas Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> out.print(this), period, period, unit);
+    }
+
+    /**
+     * Stop printing reports of the metrics.
+     */
+    public synchronized void stopReport() {
+        if (reporter != null) {
+            reporter.shutdown();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Make the metrics available to JMX consoles. If the platform's MBean
+     * server can't be used, the metrics can still be read here.
+     */
+    synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("Canvas:type=RenderMetrics,name="
+                    + ObjectName.quote(title) + ",id=" + id);
+            server.registerMBean(new Bean(), name);
+            beanName = name;
+        } catch (JMException | SecurityException e) {
+            // Leave the metrics unregistered
+        }
+    }
+
+    /**
+     * Stop reporting the metrics and take them away from JMX consoles.
+     */
+    synchronized void close() {
+        stopReport();
+        if (beanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(beanName);
+            } catch (JMException | SecurityException e) {
+                // Already gone
+            }
+            beanName = null;
+        }
+    }
+
+    /**
+     * Describe the metrics recorded so far.
+     *
+     * @return a text report of the metrics
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append("Canvas \"").append(title).append("\" metrics")
+            .append(System.lineSeparator());
+        text.append(frameTimes.toString("frame", 1e6, "ms")).append(System.lineSeparator());
+        text.append(shapesPerFrame.toString("shapes", 1, "  ")).append(System.lineSeparator());
+        text.append(lockWaits.toString("lock", 1e3, "us")).append(System.lineSeparator());
+        text.append(saveTimes.toString("save", 1e6, "ms")).append(System.lineSeparator());
+        text.append(encodeTimes.toString("encode", 1e6, "ms")).append(System.lineSeparator());
+        text.append(inputTimes.toString("input", 1e6, "ms")).append(System.lineSeparator());
+        text.append(collisionTimes.toString("collide", 1e6, "ms")).append(System.lineSeparator());
+        text.append(String.format("redraws from add %d, from remove %d%n",
+                getRedrawsFromAdd(), getRedrawsFromRemove()));
+        return text.toString();
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Histogram - counts of values in buckets that each cover
+     * about 3% of the values in them. Values below 64 each have a bucket
+     * of their own; above that, each power of two is split into 32
+     * buckets. Values can be recorded from many threads at once.
+     */
+    public static class Histogram {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Record a value.
+         *
+         * @param value the value, which is treated as 0 if it is negative
+         */
+        void record(long value) {
+            value = Math.max(0, value);
+            counts.incrementAndGet(bucket(value));
+            count.increment();
+            total.add(value);
+
+            long largest = max.get();
+            while (value > largest && !max.compareAndSet(largest, value)) {
+                largest = max.get();
+            }
+        }
+
+        /**
+         * Determine how many values have been recorded.
+         *
+         * @return the number of values
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Find the mean of the values recorded.
+         *
+         * @return the mean, or 0 if there are no values
+         */
+        public double getMean() {
+            long values = count.sum();
+            return values == 0 ? 0 : (double) total.sum() / values;
+        }
+
+        /**
+         * Find the largest value recorded.
+         *
+         * @return the largest value, or 0 if there are no values
+         */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * Find the value that a given percentage of the values are at or
+         * below, to within the width of its bucket.
+         *
+         * @param percentile the percentage, from 0 to 100
+         * @return the largest value in the bucket holding that value, or 0
+         * if there are no values
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be 0 to 100: " + percentile);
+            }
+
+            long values = count.sum();
+            long wanted = Math.max(1, (long) Math.ceil(values * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= wanted) {
+                    return Math.min(highest(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        /**
+         * Forget the values recorded so far.
+         */
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            count.reset();
+            total.reset();
+            max.set(0);
+        }
+
+        /**
+         * Summarize the values in a unit of measurement.
+         *
+         * @param unit the size of the unit in the values' own units
+         * @return the summary
+         */
+        Summary summary(double unit) {
+            return new Summary(getCount(), getMean() / unit,
+                    getValueAtPercentile(50) / unit, getValueAtPercentile(90) / unit,
+                    getValueAtPercentile(99) / unit, getMax() / unit);
+        }
+
+        /**
+         * Describe the values as one line of a report.
+         */
+        String toString(String name, double unit, String unitName) {
+            if (getCount() == 0) {
+                return String.format("%-7s none", name);
+            }
+
+            return String.format("%-7s %8d  mean %9.3f %s  p50 %9.3f %s  p99 %9.3f %s  max %9.3f %s",
+                    name, getCount(), getMean() / unit, unitName,
+                    getValueAtPercentile(50) / unit, unitName,
+                    getValueAtPercentile(99) / unit, unitName, getMax() / unit, unitName);
+        }
+
+        /**
+         * Find the bucket a value goes in.
+         */
+        private static int bucket(long value) {
+            if (value < 2 * SUB_BUCKETS) {
+                return (int) value;
+            }
+
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        /**
+         * Find the largest value that goes in a bucket.
+         */
+        private static long highest(int bucket) {
+            if (bucket < 2 * SUB_BUCKETS) {
+                return bucket;
+            }
+
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+            return lowest + (1L << shift) - 1;
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Summary - the count, mean, median, 90th and 99th
+     * percentiles and largest of the values in a histogram, as shown in a
+     * JMX console.
+     */
+    public static class Summary {
+        private final long count;
+        private final double mean;
+        private final double median;
+        private final double p90;
+        private final double p99;
+        private final double max;
+
+        @ConstructorProperties({"count", "mean", "median", "p90", "p99", "max"})
+        public Summary(long count, double mean, double median, double p90,
+                       double p99, double max) {
+            this.count = count;
+            this.mean = mean;
+            this.median = median;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getMedian() {
+            return median;
+        }
+
+        public double getP90() {
+            return p90;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Bean - the metrics registered with the MBean server.
+     */
+    private class Bean implements MetricsMXBean {
+        public Summary getFrameTimes() {
+            return frameTimes.summary(1e6);
+        }
+
+        public Summary getShapesPerFrame() {
+            return shapesPerFrame.summary(1);
+        }
+
+        public Summary getLockWaits() {
+            return lockWaits.summary(1e3);
+        }
+
+        public Summary getSaveTimes() {
+            return saveTimes.summary(1e6);
+        }
+
+        public Summary getEncodeTimes() {
+            return encodeTimes.summary(1e6);
+        }
+
+        public Summary getInputTimes() {
+            return inputTimes.summary(1e6);
+        }
+
+        public Summary getCollisionTimes() {
+            return collisionTimes.summary(1e6);
+        }
+
+        public long getRedrawsFromAdd() {
+            return RenderMetrics.this.getRedrawsFromAdd();
+        }
+
+        public long getRedrawsFromRemove() {
+            return RenderMetrics.this.getRedrawsFromRemove();
+        }
+
+        public String getReport() {
+            return RenderMetrics.this.toString();
+        }
+
+        public void reset() {
+            RenderMetrics.this.reset();
+        }
+    }
+}
@@ -0,0 +1,443 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SceneFile saves the shapes on a canvas to a file, and loads them back, so
+ * a picture can be kept and changed later rather than only saved as an
+ * image. Circles, rectangles, triangles, arcs and bulk shapes are saved;
+ * shapes of other kinds are left out.
+ *
+ * A scene file is a header followed by one fixed-size record per shape.
+ * Every value is a 4 byte number, most significant byte first:
+ *
+ * <pre>
+ * header: "BJSC", version, flags, canvas width, canvas height,
+ *         background color, shape count, bulk shape count,
+ *         place of the bulk shapes in the drawing order (-1 if none)
+ * record: type + flags * 256, x, y, width, height, start angle, extent,
+ *         color
+ * </pre>
+ *
+ * Shape records come in drawing order, from the bottom of the picture to
+ * the top, and are followed by the bulk shape records. Colors are packed
+ * as alpha, red, green and blue bytes. Files are read through a memory map,
+ * so large scenes load without being copied into memory first.
+ *
+ * @version 2026.10.17
+ */
+public class SceneFile {
+    private static final int MAGIC = 0x424a5343;    // "BJSC"
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 9;
+    private static final int RECORD_INTS = 8;
+
+    // Header flags
+    private static final int HAS_BACKGROUND = 1;
+    // Record flags
+    private static final int VISIBLE = 1;
+
+    // Records read or written at a time
+    private static final int RECORDS_PER_BLOCK = 8192;
+
+    private SceneFile() {
+    }
+
+    /**
+     * Save all the shapes on a canvas, and its background color.
+     *
+     * @param canvas the canvas to save
+     * @param file the file to save to
+     */
+    public static void save(Canvas canvas, File file) throws IOException {
+        try (Writer out = new Writer(file)) {
+            BulkShapes bulk = null;
+            int bulkIndex = -1;
+
+            for (Object shape : canvas.getShapeObjects()) {
+                if (shape instanceof BulkShapes) {
+                    bulk = (BulkShapes) shape;
+                    bulkIndex = out.shapes;
+                } else {
+                    saveShape(shape, out);
+                }
+            }
+
+            int shapeCount = out.shapes;
+            if (bulk != null) {
+                bulk.save(out);
+            }
+
+            out.finish(HAS_BACKGROUND, canvas.getWidth(), canvas.getHeight(),
+                       canvas.getBackgroundColor().getRGB(), shapeCount,
+                       out.shapes - shapeCount, bulkIndex);
+        }
+    }
+
+    /**
+     * Save a list of shapes, whether they are visible or not. When they are
+     * loaded, the visible ones are drawn in the order of the list.
+     *
+     * @param shapes the shapes to save
+     * @param file the file to save to
+     */
+    public static void save(List<?> shapes, File file) throws IOException {
+        try (Writer out = new Writer(file)) {
+            for (Object shape : shapes) {
+                saveShape(shape, out);
+            }
+            out.finish(0, 0, 0, 0, out.shapes, 0, -1);
+        }
+    }
+
+    /**
+     * Write the record for one shape, if it is a kind that can be saved.
+     */
+    private static void saveShape(Object shape, Writer out) throws IOException {
+        if (shape instanceof Circle) {
+            Circle circle = (Circle) shape;
+            out.shape(BulkShapes.CIRCLE, circle.isVisible(), circle.getX(), circle.getY(),
+                      circle.getDiameter(), circle.getDiameter(), 0, 0,
+                      circle.getColor().getRGB());
+        } else if (shape instanceof Rect) {
+            Rect rect = (Rect) shape;
+            out.shape(BulkShapes.RECT, rect.isVisible(), rect.getX(), rect.getY(),
+                      rect.getWidth(), rect.getHeight(), 0, 0, rect.getColor().getRGB());
+        } else if (shape instanceof Triangle) {
+            Triangle triangle = (Triangle) shape;
+            out.shape(BulkShapes.TRIANGLE, triangle.isVisible(), triangle.getX(),
+                      triangle.getY(), triangle.getWidth(), triangle.getHeight(), 0, 0,
+                      triangle.getColor().getRGB());
+        } else if (shape instanceof Arc) {
+            Arc arc = (Arc) shape;
+            out.shape(BulkShapes.ARC, arc.isVisible(), arc.getX(), arc.getY(),
+                      arc.getDiameter(), arc.getDiameter(), arc.getArcBeginning(),
+                      arc.getArcLength(), arc.getColor().getRGB());
+        }
+    }
+
+    /**
+     * Load a scene onto a canvas, in place of the shapes already on it. The
+     * canvas is redrawn once, when the whole scene has been loaded.
+     *
+     * @param file the file to load
+     * @param canvas the canvas to put the shapes on
+     * @return the shapes loaded, visible or not, in the order they were
+     * saved; bulk shapes are not included
+     * @throws IOException if the file can't be read or isn't a scene file
+     */
+    public static List<Object> load(File file, Canvas canvas) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            IntBuffer ints = map(channel, file);
+            int shapeCount = ints.get(6);
+            int bulkCount = ints.get(7);
+            int bulkIndex = ints.get(8);
+
+            List<Object> shapes = new ArrayList<>(shapeCount);
+            Map<Integer, Color> colors = new HashMap<>();
+
+            canvas.beginBatch();
+            try {
+                start(ints, canvas);
+
+                readRecords(ints, 0, shapeCount, (index, block, i) -> {
+                    if (index == bulkIndex) {
+                        canvas.getBulkShapes();
+                    }
+                    shapes.add(makeShape(block, i, colors, canvas));
+                });
+
+                if (bulkIndex >= 0) {
+                    BulkShapes bulk = canvas.getBulkShapes();
+                    bulk.beginChanges();
+                    try {
+                        readRecords(ints, shapeCount, bulkCount,
+                                    (index, block, i) -> addBulkShape(block, i, bulk));
+                    } finally {
+                        bulk.endChanges();
+                    }
+                }
+            } finally {
+                canvas.endBatch();
+            }
+            return shapes;
+        }
+    }
+
+    /**
+     * Load a scene onto a canvas as bulk shapes, in place of the shapes
+     * already on it. No object is made for each shape, so this is the
+     * quickest way to load a very large scene that won't be changed shape
+     * by shape. Shapes saved as hidden are left out.
+     *
+     * @param file the file to load
+     * @param canvas the canvas to put the shapes on
+     * @return the bulk shapes holding the scene
+     * @throws IOException if the file can't be read or isn't a scene file
+     */
+    public static BulkShapes loadAsBulkShapes(File file, Canvas canvas) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            IntBuffer ints = map(channel, file);
+            int shapeCount = ints.get(6);
+            int bulkCount = ints.get(7);
+            int bulkIndex = ints.get(8);
+            int below = bulkIndex >= 0 ? bulkIndex : shapeCount;
+
+            canvas.beginBatch();
+            try {
+                start(ints, canvas);
+                BulkShapes bulk = canvas.getBulkShapes();
+
+                // Keep the drawing order: shapes saved below the bulk shapes,
+                // then the bulk shapes, then the shapes above them
+                bulk.beginChanges();
+                try {
+                    Records add = (index, block, i) -> addBulkShape(block, i, bulk);
+                    readRecords(ints, 0, below, add);
+                    readRecords(ints, shapeCount, bulkCount, add);
+                    readRecords(ints, below, shapeCount - below, add);
+                } finally {
+                    bulk.endChanges();
+                }
+                return bulk;
+            } finally {
+                canvas.endBatch();
+            }
+        }
+    }
+
+    /**
+     * Map a scene file into memory and check its header.
+     *
+     * @return the file's contents as numbers
+     */
+    private static IntBuffer map(FileChannel channel, File file) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_INTS * 4) {
+            throw new IOException("Not a scene file: " + file);
+        }
+
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        IntBuffer ints = map.asIntBuffer();
+        if (ints.get(0) != MAGIC) {
+            throw new IOException("Not a scene file: " + file);
+        }
+        if (ints.get(1) != VERSION) {
+            throw new IOException("Unknown scene file version " + ints.get(1) + ": " + file);
+        }
+
+        int shapeCount = ints.get(6);
+        int bulkCount = ints.get(7);
+        int bulkIndex = ints.get(8);
+        long records = (long) shapeCount + bulkCount;
+        if (shapeCount < 0 || bulkCount < 0 || bulkIndex < -1 || bulkIndex > shapeCount
+                || size < (HEADER_INTS + records * RECORD_INTS) * 4) {
+            throw new IOException("Scene file is damaged: " + file);
+        }
+        return ints;
+    }
+
+    /**
+     * Clear the canvas and set its background for a scene being loaded.
+     */
+    private static void start(IntBuffer ints, Canvas canvas) {
+        canvas.erase();
+        if ((ints.get(2) & HAS_BACKGROUND) != 0) {
+            canvas.setBackgroundColor(new Color(ints.get(5), true));
+        }
+    }
+
+    /**
+     * Read a run of records a block at a time, handing each to a handler.
+     *
+     * @param first the number of the first record to read
+     * @param count the number of records to read
+     */
+    private static void readRecords(IntBuffer ints, int first, int count, Records handler)
+            throws IOException {
+        int[] block = new int[RECORDS_PER_BLOCK * RECORD_INTS];
+        ints.position(HEADER_INTS + first * RECORD_INTS);
+
+        int index = first;
+        int end = first + count;
+        while (index < end) {
+            int records = Math.min(RECORDS_PER_BLOCK, end - index);
+            ints.get(block, 0, records * RECORD_INTS);
+
+            for (int r = 0; r < records; r++, index++) {
+                handler.record(index, block, r * RECORD_INTS);
+            }
+        }
+    }
+
+    /**
+     * Make the shape in a record, and show it if it was visible.
+     */
+    private static Object makeShape(int[] block, int i, Map<Integer, Color> colors,
+                                    Canvas canvas) throws IOException {
+        int type = block[i] & 0xff;
+        boolean visible = ((block[i] >> 8) & VISIBLE) != 0;
+        int x = block[i + 1];
+        int y = block[i + 2];
+        int width = block[i + 3];
+        int height = block[i + 4];
+        Color color = colors.computeIfAbsent(block[i + 7], argb -> new Color(argb, true));
+
+        switch (type) {
+            case BulkShapes.CIRCLE: {
+                Circle circle = new Circle(x, y, width, color);
+                if (visible) {
+                    circle.makeVisible(canvas);
+                }
+                return circle;
+            }
+            case BulkShapes.RECT: {
+                Rect rect = new Rect(x, y, width, height, color);
+                if (visible) {
+                    rect.makeVisible(canvas);
+                }
+                return rect;
+            }
+            case BulkShapes.TRIANGLE: {
+                Triangle triangle = new Triangle(x, y, width, height, color);
+                if (visible) {
+                    triangle.makeVisible(canvas);
+                }
+                return triangle;
+            }
+            case BulkShapes.ARC: {
+                Arc arc = new Arc(x, y, width, block[i + 5], block[i + 6], color);
+                if (visible) {
+                    arc.makeVisible(canvas);
+                }
+                return arc;
+            }
+            default:
+                throw new IOException("Unknown shape type " + type + " in scene file");
+        }
+    }
+
+    /**
+     * Add the shape in a record to bulk shapes, if it was visible.
+     */
+    private static void addBulkShape(int[] block, int i, BulkShapes bulk) throws IOException {
+        int type = block[i] & 0xff;
+        if (type < BulkShapes.CIRCLE || type > BulkShapes.ARC) {
+            throw new IOException("Unknown shape type " + type + " in scene file");
+        }
+        if (((block[i] >> 8) & VISIBLE) != 0) {
+            bulk.add((byte) type, block[i + 1], block[i + 2], block[i + 3], block[i + 4],
+                     block[i + 5], block[i + 6], block[i + 7]);
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner interface Records - a functional interface for code that takes
+     * in the records read from a scene file
+     */
+    private interface Records {
+        public void record(int index, int[] block, int i) throws IOException;
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Writer - writes shape records to a scene file through a
+     * buffer, and fills in the header at the end.
+     */
+    static class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer =
+                ByteBuffer.allocateDirect(RECORDS_PER_BLOCK * RECORD_INTS * 4);
+        private int shapes = 0;
+
+        private Writer(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE,
+                                       StandardOpenOption.TRUNCATE_EXISTING);
+
+            // Leave room for the header
+            buffer.position(HEADER_INTS * 4);
+        }
+
+        /**
+         * Write one shape record.
+         *
+         * @param type the kind of shape, as in BulkShapes
+         * @param visible true if the shape is showing
+         * @param x the x location of the shape
+         * @param y the y location of the shape
+         * @param width the width of the shape
+         * @param height the height of the shape
+         * @param startAngle the angle an arc starts at
+         * @param extent the angle an arc sweeps
+         * @param argb the color, as alpha, red, green and blue bytes
+         */
+        void shape(int type, boolean visible, int x, int y, int width, int height,
+                   int startAngle, int extent, int argb) throws IOException {
+            if (buffer.remaining() < RECORD_INTS * 4) {
+                flush();
+            }
+
+            buffer.putInt(type | (visible ? VISIBLE << 8 : 0));
+            buffer.putInt(x);
+            buffer.putInt(y);
+            buffer.putInt(width);
+            buffer.putInt(height);
+            buffer.putInt(startAngle);
+            buffer.putInt(extent);
+            buffer.putInt(argb);
+            shapes++;
+        }
+
+        /**
+         * Write the last records and then the header at the start of the
+         * file.
+         */
+        private void finish(int flags, int width, int height, int background,
+                            int shapeCount, int bulkCount, int bulkIndex) throws IOException {
+            flush();
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(flags);
+            buffer.putInt(width);
+            buffer.putInt(height);
+            buffer.putInt(background);
+            buffer.putInt(shapeCount);
+            buffer.putInt(bulkCount);
+            buffer.putInt(bulkIndex);
+            buffer.flip();
+
+            long position = 0;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+        /**
+         * Write out the buffered records.
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ShapeGrid is a spatial index over the shapes on a canvas. The plane is cut
+ * into square cells, and each shape is listed in every cell its bounds
+ * overlap, so finding the shapes in an area only has to look at the cells
+ * that area covers instead of every shape on the canvas. Shapes that would
+ * cover a great many cells are kept in a separate list instead.
+ *
+ * The grid is not synchronized; the canvas only uses it while holding its
+ * shapes lock.
+ *
+ * @version 2026.10.17
+ */
+class ShapeGrid {
+    private static final int CELL_SIZE = 64;
+    private static final int MAX_CELLS_PER_SHAPE = 64;
+
+    private final Map<Long, List<Canvas.ShapeEntry>> cells = new HashMap<>();
+    private final List<Canvas.ShapeEntry> largeShapes = new ArrayList<>();
+    private int queryNumber = 0;
+
+    /**
+     * Add a shape to the grid at its current bounds.
+     *
+     * @param entry the shape to add
+     */
+    void insert(Canvas.ShapeEntry entry) {
+        Rectangle bounds = entry.bounds;
+        if (bounds == null || bounds.isEmpty()) {
+            return;
+        }
+
+        if (isLarge(bounds)) {
+            largeShapes.add(entry);
+            return;
+        }
+
+        int left = cell(bounds.x);
+        int top = cell(bounds.y);
+        int right = cell(bounds.x + bounds.width - 1);
+        int bottom = cell(bounds.y + bounds.height - 1);
+
+        for (int cy = top; cy <= bottom; cy++) {
+            for (int cx = left; cx <= right; cx++) {
+                cells.computeIfAbsent(key(cx, cy), k -> new ArrayList<>(4)).add(entry);
+            }
+        }
+    }
+
+    /**
+     * Take a shape out of the grid.
+     *
+     * @param entry the shape to remove
+     * @param bounds the bounds the shape had when it was added or last moved
+     */
+    void remove(Canvas.ShapeEntry entry, Rectangle bounds) {
+        if (bounds == null || bounds.isEmpty()) {
+            return;
+        }
+
+        if (isLarge(bounds)) {
+            largeShapes.remove(entry);
+            return;
+        }
+
+        int left = cell(bounds.x);
+        int top = cell(bounds.y);
+        int right = cell(bounds.x + bounds.width - 1);
+        int bottom = cell(bounds.y + bounds.height - 1);
+
+        for (int cy = top; cy <= bottom; cy++) {
+            for (int cx = left; cx <= right; cx++) {
+                Long key = key(cx, cy);
+                List<Canvas.ShapeEntry> cell = cells.get(key);
+                if (cell != null) {
+                    cell.remove(entry);
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Move a shape from its old bounds to its current bounds.
+     *
+     * @param entry the shape that moved
+     * @param oldBounds the bounds the shape had before it moved
+     */
+    void move(Canvas.ShapeEntry entry, Rectangle oldBounds) {
+        if (oldBounds != null && oldBounds.equals(entry.bounds)) {
+            return;
+        }
+
+        remove(entry, oldBounds);
+        insert(entry);
+    }
+
+    /**
+     * Remove every shape from the grid.
+     */
+    void clear() {
+        cells.clear();
+        largeShapes.clear();
+    }
+
+    /**
+     * Find the shapes whose bounds overlap an area.
+     *
+     * @param area the area to look in
+     * @return the shapes found, from the bottom of the picture to the top
+     */
+    List<Canvas.ShapeEntry> query(Rectangle area) {
+        List<Canvas.ShapeEntry> found = new ArrayList<>();
+        if (area.isEmpty()) {
+            return found;
+        }
+
+        // Mark each shape as it is found so shapes in several cells are only
+        // listed once
+        int mark = ++queryNumber;
+
+        int left = cell(area.x);
+        int top = cell(area.y);
+        int right = cell(area.x + area.width - 1);
+        int bottom = cell(area.y + area.height - 1);
+
+        if ((long) (right - left + 1) * (bottom - top + 1) > cells.size()) {
+            // The area covers more cells than are in use, so just check those
+            for (List<Canvas.ShapeEntry> cell : cells.values()) {
+                collect(cell, area, mark, found);
+            }
+        } else {
+            for (int cy = top; cy <= bottom; cy++) {
+                for (int cx = left; cx <= right; cx++) {
+                    List<Canvas.ShapeEntry> cell = cells.get(key(cx, cy));
+                    if (cell != null) {
+                        collect(cell, area, mark, found);
+                    }
+                }
+            }
+        }
+        collect(largeShapes, area, mark, found);
+
+        found.sort(Canvas.ShapeEntry.DRAW_ORDER);
+        return found;
+    }
+
+    /**
+     * Find the shape drawn on top of the others at a point, out of the
+     * shapes that actually cover it. Only the cell holding the point is
+     * looked at, from the most recently listed shapes back, and a shape's
+     * exact outline is only checked if it would be on top of the best
+     * found so far.
+     *
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @return the shape on top, or null if no shape covers the point
+     */
+    Canvas.ShapeEntry topAt(int x, int y) {
+        Canvas.ShapeEntry top = null;
+        List<Canvas.ShapeEntry> cell = cells.get(key(cell(x), cell(y)));
+        if (cell != null) {
+            top = topAt(cell, x, y, top);
+        }
+        return topAt(largeShapes, x, y, top);
+    }
+
+    /**
+     * Find the shape on top at a point out of a list of shapes and the best
+     * found so far.
+     */
+    private static Canvas.ShapeEntry topAt(List<Canvas.ShapeEntry> shapes, int x, int y,
+                                           Canvas.ShapeEntry top) {
+        for (int i = shapes.size() - 1; i >= 0; i--) {
+            Canvas.ShapeEntry entry = shapes.get(i);
+            if (entry.bounds.contains(x, y)
+                    && (top == null || Canvas.ShapeEntry.DRAW_ORDER.compare(entry, top) > 0)
+                    && entry.contains(x, y)) {
+                top = entry;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Find the shapes whose bounds contain a point.
+     *
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @return the shapes found, from the bottom of the picture to the top
+     */
+    List<Canvas.ShapeEntry> query(int x, int y) {
+        return query(new Rectangle(x, y, 1, 1));
+    }
+
+    /**
+     * Add the shapes in a list that overlap an area and haven't been found
+     * yet to the shapes found.
+     */
+    private void collect(List<Canvas.ShapeEntry> shapes, Rectangle area, int mark,
+                         List<Canvas.ShapeEntry> found) {
+        for (Canvas.ShapeEntry entry : shapes) {
+            if (entry.queryMark != mark && entry.bounds.intersects(area)) {
+                entry.queryMark = mark;
+                found.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Determine if a shape covers too many cells to be listed in each one.
+     */
+    private static boolean isLarge(Rectangle bounds) {
+        long across = (long) cell(bounds.x + bounds.width - 1) - cell(bounds.x) + 1;
+        long down = (long) cell(bounds.y + bounds.height - 1) - cell(bounds.y) + 1;
+        return across * down > MAX_CELLS_PER_SHAPE;
+    }
+
+    /**
+     * Find the cell column or row containing a coordinate.
+     */
+    private static int cell(int coordinate) {
+        return Math.floorDiv(coordinate, CELL_SIZE);
+    }
+
+    /**
+     * Combine a cell's column and row into a single key.
+     */
+    private static Long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+}
@@ -0,0 +1,378 @@
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Stage runs many animated actors on a canvas at once. Each actor is a
+ * simple script that moves its shapes and then waits for the next frame:
+ *
+ * <pre>
+ * Stage stage = new Stage(canvas, 30);
+ * stage.spawn(actor -&gt; {
+ *     while (actor.nextFrame()) {
+ *         ball.moveRight();
+ *     }
+ * });
+ * stage.start();
+ * </pre>
+ *
+ * Every actor takes one step per frame. Frames are kept by the canvas's
+ * render thread, which the stage starts if the canvas doesn't have one
+ * yet. Each frame, the render thread waits for every actor to finish its
+ * step, then draws the frame while the actors wait, so each frame shows
+ * all the actors' moves and no actor moves while it is being drawn.
+ *
+ * Each actor runs on a thread of its own. When the Java runtime has virtual
+ * threads (Java 21 and later), they are used, so tens of thousands of
+ * actors can run at once. On Java 17 each actor gets a platform thread with
+ * a 256KB stack, which is fine for a few thousand actors.
+ *
+ * @version 2026.10.17
+ */
+public class Stage {
+    /**
+     * ***********************************************************************
+     * Inner interface Script - a functional interface for the code an actor
+     * runs
+     */
+    public interface Script {
+        public void act(Actor actor);
+    }
+
+    // Most actors sharing one phaser before another is added under the root
+    private static final int ACTORS_PER_GROUP = 1024;
+    // Stack size of each actor's thread
+    private static final long ACTOR_STACK_SIZE = 256 * 1024;
+
+    private final Canvas canvas;
+    private final int framesPerSecond;
+    private final ThreadFactory threads = actorThreads();
+
+    // The render thread and each group of actors are parties of the root
+    // phaser. Each frame takes two phases: in the even phase the actors
+    // take their steps, and in the odd phase the frame is drawn. It starts
+    // in an odd phase, so actors wait for the first frame. Once the stage
+    // is stopping, it ends at the next change of phase, so it never ends in
+    // the middle of a step.
+    private final Phaser clock = new Phaser(1) {
+        @Override
+        protected boolean onAdvance(int phase, int registeredParties) {
+            return stopping || registeredParties == 0;
+        }
+    };
+    private Phaser group;
+    private int groupSize = 0;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final Set<Thread> actorThreads = ConcurrentHashMap.newKeySet();
+    // The thread running frames, set once the first frame starts
+    private volatile Thread frameThread;
+    // True while stop() waits to stop the render thread itself
+    private volatile boolean stopWaiting = false;
+    private volatile boolean stopping = false;
+    private volatile long frame = 0;
+    private boolean started = false;
+    private boolean ownsRenderThread = false;
+
+    // Run by the render thread at the start of each frame
+    private final Canvas.FrameTask frames = this::startFrame;
+
+    /**
+     * Create a stage for actors on a canvas.
+     *
+     * @param canvas the canvas to redraw each frame
+     * @param framesPerSecond how many frames to run each second, if the
+     * canvas has no render thread when the stage starts
+     */
+    public Stage(Canvas canvas, int framesPerSecond) {
+        if (framesPerSecond <= 0) {
+            throw new IllegalArgumentException("Frames per second must be > 0");
+        }
+
+        this.canvas = canvas;
+        this.framesPerSecond = framesPerSecond;
+        this.group = new Phaser(clock);
+        clock.arrive();
+    }
+
+    /**
+     * Add an actor to the stage. Its script starts running in the next
+     * frame, or in the current one if the actors are still taking their
+     * steps.
+     *
+     * @param script the code the actor runs
+     */
+    public synchronized void spawn(Script script) {
+        if (stopping) {
+            throw new IllegalStateException("Stage has been stopped");
+        }
+
+        if (groupSize == ACTORS_PER_GROUP) {
+            group = new Phaser(clock);
+            groupSize = 0;
+        }
+        groupSize++;
+        Phaser actorGroup = group;
+        running.incrementAndGet();
+
+        Actor actor = new Actor(actorGroup);
+        Thread thread = threads.newThread(() -> {
+            try {
+                // Joining waits if the frame is just ending, and a frame
+                // being drawn has to be let finish before the first step
+                int phase = actorGroup.register();
+                if ((phase & 1) == 1) {
+                    phase = actorGroup.arriveAndAwaitAdvance();
+                }
+                if (phase >= 0 && !stopping) {
+                    script.act(actor);
+                }
+            } finally {
+                actor.leave();
+            }
+        });
+
+        // Kept until they have ended, so stop() can wait for them
+        if (actorThreads.size() > 2 * running.get() + ACTORS_PER_GROUP) {
+            actorThreads.removeIf(t -> !t.isAlive());
+        }
+        actorThreads.add(thread);
+        thread.start();
+    }
+
+    /**
+     * Start running frames on the canvas's render thread, starting the
+     * render thread if the canvas doesn't have one.
+     */
+    public synchronized void start() {
+        if (started) {
+            throw new IllegalStateException("Stage already started");
+        }
+        if (stopping) {
+            throw new IllegalStateException("Stage has been stopped");
+        }
+        started = true;
+
+        synchronized (canvas) {
+            if (!canvas.hasRenderThread()) {
+                canvas.startRenderThread(framesPerSecond);
+                ownsRenderThread = true;
+            }
+        }
+        canvas.addFrameTask(frames);
+    }
+
+    /**
+     * Stop the stage at the end of the current frame. Once the actors have
+     * finished the step they are on and it has been drawn, they are told
+     * the stage has stopped. If the stage started the canvas's render
+     * thread, the render thread stops too.
+     *
+     * This waits for the actors' scripts to end and for the render thread
+     * to stop. Called from an actor's script, or from code run by the
+     * render thread, it can't wait for them, so it returns straight away
+     * and the stage stops on its own.
+     */
+    public void stop() {
+        Thread current = Thread.currentThread();
+        boolean wait = !actorThreads.contains(current) && current != frameThread;
+
+        synchronized (this) {
+            if (wait) {
+                stopWaiting = true;
+            }
+            stopping = true;
+
+            // With no render thread to run the frames, no actor is taking
+            // a step
+            if (!started || !canvas.hasRenderThread()) {
+                finish();
+            }
+        }
+        if (!wait) {
+            return;
+        }
+
+        // The actors end once the render thread finishes the frame
+        boolean interrupted = false;
+        for (Thread thread : actorThreads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        boolean stopRenderThread;
+        synchronized (this) {
+            finish();
+            stopRenderThread = ownsRenderThread;
+            ownsRenderThread = false;
+        }
+        if (stopRenderThread) {
+            canvas.stopRenderThread();
+        }
+    }
+
+    /**
+     * Determine how many frames have been drawn.
+     *
+     * @return the number of frames
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * Determine how many actors are still running their scripts.
+     *
+     * @return the number of actors
+     */
+    public int getActorCount() {
+        return running.get();
+    }
+
+    /**
+     * Let the actors take their steps for a frame, and wait for them all to
+     * finish. Run by the render thread at the start of each frame.
+     *
+     * @return true if the frame must be drawn
+     */
+    private boolean startFrame() {
+        frameThread = Thread.currentThread();
+
+        // Wait for the actors to be ready for the frame too; arriving
+        // without waiting could count this thread twice in one phase
+        if (clock.arriveAndAwaitAdvance() < 0) {
+            finish();
+            return false;
+        }
+
+        int phase = clock.arriveAndAwaitAdvance();
+        frame++;
+        if (phase < 0) {
+            // Draw the actors' last steps
+            finish();
+        }
+        return true;
+    }
+
+    /**
+     * Tell the actors the stage has stopped and stop running frames. Unless
+     * stop() is waiting to do it, the render thread is stopped too if the
+     * stage started it.
+     */
+    private synchronized void finish() {
+        clock.forceTermination();
+        canvas.removeFrameTask(frames);
+        if (ownsRenderThread && !stopWaiting) {
+            ownsRenderThread = false;
+            canvas.stopRenderThread();
+        }
+    }
+
+    /**
+     * Find a way to make threads for actors. This is built for Java 17, so
+     * virtual threads are found by reflection; on Java 21 and later they are
+     * used, and on older runtimes each actor gets a small platform thread.
+     */
+    private static ThreadFactory actorThreads() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                                  .invoke(builder, "Actor-", 1L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            // No virtual threads, so use small daemon threads instead
+            AtomicInteger count = new AtomicInteger();
+            return r -> {
+                Thread thread = new Thread(null, r, "Actor-" + count.incrementAndGet(),
+                                           ACTOR_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Actor - an actor's view of the stage, used by its script to
+     * wait for frames.
+     */
+    public class Actor {
+        private final Phaser actorGroup;
+        private boolean left = false;
+
+        private Actor(Phaser actorGroup) {
+            this.actorGroup = actorGroup;
+        }
+
+        /**
+         * Finish this frame's step and wait for the next frame.
+         *
+         * @return true if the next frame has come, or false if the stage has
+         * stopped and the script should end
+         */
+        public boolean nextFrame() {
+            if (left || stopping) {
+                return false;
+            }
+
+            // Wait for the others to finish their steps, and then for the
+            // frame to be drawn
+            int phase = actorGroup.arriveAndAwaitAdvance();
+            if (phase >= 0) {
+                phase = actorGroup.arriveAndAwaitAdvance();
+            }
+            return phase >= 0 && !stopping;
+        }
+
+        /**
+         * Wait a number of frames, doing nothing.
+         *
+         * @param frames the number of frames to wait
+         * @return true if the frames have passed, or false if the stage has
+         * stopped and the script should end
+         */
+        public boolean waitFrames(int frames) {
+            for (int i = 0; i < frames; i++) {
+                if (!nextFrame()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Determine the number of the current frame.
+         *
+         * @return the frame number
+         */
+        public long getFrame() {
+            return frame;
+        }
+
+        /**
+         * Take this actor off the stage once its script has ended.
+         */
+        private void leave() {
+            if (!left) {
+                left = true;
+                running.decrementAndGet();
+                if (!actorGroup.isTerminated()) {
+                    actorGroup.arriveAndDeregister();
+                }
+            }
+        }
+    }
+}
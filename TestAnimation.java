@@ -0,0 +1,34 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+
+public class TestAnimation
+{
+    public static void main(String[] args) throws InterruptedException, IOException
+    {
+        // Animate a ball on a canvas that is recorded, so every frame is drawn
+        Canvas pic = Canvas.createHeadlessCanvas("Animation Test", 300, 300, Color.white);
+        pic.startRecording(Channels.newChannel(OutputStream.nullOutputStream()),
+                           FrameRecorder.Format.RAW);
+        RenderMetrics metrics = pic.enableMetrics();
+
+        Circle ball = new Circle();
+        ball.makeVisible(pic);
+        metrics.reset();
+
+        // Moving the ball is the only change, so only it makes frames
+        Animation animation = pic.animate(30, () -> ball.moveHorizontal(1));
+        animation.start();
+        Thread.sleep(1000);
+        animation.stop();
+        pic.stopRecording();
+
+        long frames = metrics.getFrameTimes().getCount();
+        System.out.println(animation.getUpdates() + " updates, " + frames + " frames drawn");
+        if (animation.getUpdates() == 0 || frames == 0) {
+            System.err.println("The animation didn't draw its frames.");
+            System.exit(1);
+        }
+    }
+}
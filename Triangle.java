@@ -1,5 +1,8 @@
 import java.awt.Graphics;
 import java.awt.Color;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 
 /**
  * A triangle that can be manipulated and that draws itself on a canvas.
@@ -10,12 +13,19 @@ import java.awt.Color;
 
 public class Triangle
 {
+    private static final AffineTransform SHIFT =
+        AffineTransform.getTranslateInstance(-0.25, -0.25);
+
     private int height;
     private int width;
     private int xPosition;
     private int yPosition;
     private Color color;
     private boolean isVisible;
+    private Canvas canvas;
+    // Replaced, never changed, when the triangle moves, since frames may
+    // be drawn from it on other threads
+    private volatile Polygon corners;
 
     /**
      * Create a new triangle at default position with default color.
@@ -28,15 +38,45 @@ public class Triangle
         yPosition = 140;
         color = Canvas.getColor("green");
         isVisible = false;
+        updatePoints();
+    }
+
+    /**
+     * Create a triangle with a given position, size and color.
+     * @param x the x location of the triangle's top point
+     * @param y the y location of the triangle's top point
+     * @param width the width of the triangle's base
+     * @param height the height of the triangle, positive points up
+     * @param color the color of the triangle
+     */
+    Triangle(int x, int y, int width, int height, Color color)
+    {
+        xPosition = x;
+        yPosition = y;
+        this.width = width;
+        this.height = height;
+        this.color = color;
+        updatePoints();
     }
     
     /**
      * Make this triangle visible. If it was already visible, do nothing.
      */
     public void makeVisible()
+    {
+        makeVisible(Canvas.getCanvas());
+    }
+
+    /**
+     * Make this triangle visible on a given canvas. If it was already visible,
+     * do nothing.
+     * @param canvas the canvas to draw the triangle on
+     */
+    public void makeVisible(Canvas canvas)
     {
         if (!isVisible)
         {
+            this.canvas = canvas;
             isVisible = true;
             add();
         }
@@ -94,6 +134,8 @@ public class Triangle
     public void moveHorizontal(int distance)
     {
         xPosition += distance;
+        updatePoints();
+        update();
     }
 
     /**
@@ -104,6 +146,75 @@ public class Triangle
     public void moveVertical(int distance)
     {
         yPosition += distance;
+        updatePoints();
+        update();
+    }
+
+    /**
+     * Move the triangle to a given (X, Y) coordinate
+     * @param x the new X location to move to
+     * @param y the new Y location to move to
+     */
+    public void setPosition(int x, int y)
+    {
+        xPosition = x;
+        yPosition = y;
+        updatePoints();
+        update();
+    }
+
+    /**
+     * Determine the current X location of the triangle
+     * @return the current X location of the triangle
+     */
+    public int getX()
+    {
+        return xPosition;
+    }
+
+    /**
+     * Determine the current Y location of the triangle
+     * @return the current Y location of the triangle
+     */
+    public int getY()
+    {
+        return yPosition;
+    }
+
+    /**
+     * Determine the current width of the triangle
+     * @return the current width of the triangle
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Determine the current height of the triangle
+     * @return the current height of the triangle
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Determine if the triangle should be showing on the canvas
+     * @return true if the shape is not hidden
+     */
+    public boolean isVisible()
+    {
+        return isVisible;
+    }
+
+    /**
+     * Determine the color of the triangle
+     * @return the color the triangle is drawn in
+     */
+    Color getColor()
+    {
+        return color;
     }
 
     /**
@@ -115,6 +226,8 @@ public class Triangle
     {
         height = newHeight;
         width = newWidth;
+        updatePoints();
+        update();
     }
 
     /**
@@ -127,6 +240,7 @@ public class Triangle
     public void changeColor(String newColor)
     {
         color = Canvas.getColor(newColor);
+        update();
     }
 
     /**
@@ -135,15 +249,16 @@ public class Triangle
     private void add()
     {
         if(isVisible) {
-            Canvas canvas = Canvas.getCanvas();
-            canvas.add(this, (g) -> {int[] xpoints = {xPosition, 
-                                                      xPosition + (width/2),
-                                                      xPosition - (width/2)};
-                                     int[] ypoints = {yPosition,
-                                                      yPosition + height,
-                                                      yPosition + height};
+            canvas.add(this, (g) -> {Polygon points = corners;
                                      g.setColor(color);
-                                     g.fillPolygon(xpoints, ypoints, 3);});                                             
+                                     g.fillPolygon(points.xpoints, points.ypoints, 3);},
+                             () -> new Rectangle(xPosition - Math.abs(width/2),
+                                                 Math.min(yPosition, yPosition + height),
+                                                 2 * Math.abs(width/2),
+                                                 Math.abs(height)),
+                             // fillPolygon sets a pixel when the point a
+                             // quarter of a pixel in from its corner is inside
+                             () -> SHIFT.createTransformedShape(corners));
         }
     }
 
@@ -153,11 +268,30 @@ public class Triangle
     private void remove()
     {
         if(isVisible) {
-            Canvas canvas = Canvas.getCanvas();
             canvas.remove(this);
         }
     }
 
+    /**
+     * Work out the corners of the triangle from its position and size.
+     */
+    private void updatePoints()
+    {
+        int[] xpoints = { xPosition, xPosition + (width/2), xPosition - (width/2) };
+        int[] ypoints = { yPosition, yPosition + height, yPosition + height };
+        corners = new Polygon(xpoints, ypoints, 3);
+    }
+
+    /**
+     * Tell the canvas that the triangle has changed.
+     */
+    private void update()
+    {
+        if(isVisible) {
+            canvas.update(this);
+        }
+    }
+
     
     /**
      * Get a text description of the triangle.
@@ -0,0 +1,194 @@
+import benchmarks.Workload;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * OutputWorkloads saves pictures, recordings and scene files, for the
+ * output benchmarks. Files are written to temporary files that are deleted
+ * when the workload is closed.
+ *
+ * @version 2026.10.17
+ */
+public class OutputWorkloads {
+    private static final int SCENE_SHAPES = 1000;
+
+    private OutputWorkloads() {
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Encode - encodes a picture of a scene as a PNG in memory.
+     * The filter "IMAGEIO" uses ImageIO instead of PngEncoder, for
+     * comparison. The size is given as "WIDTHxHEIGHT".
+     */
+    public static class Encode implements Workload {
+        private final BufferedImage picture;
+        private final PngEncoder encoder;
+        private final ByteArrayOutputStream png = new ByteArrayOutputStream(1 << 20);
+
+        public Encode(String filter, int level, String size) {
+            String[] dimensions = size.split("x");
+            picture = RenderWorkloads.scene(Integer.parseInt(dimensions[0]),
+                                            Integer.parseInt(dimensions[1]),
+                                            SCENE_SHAPES, "mixed").createImage();
+            encoder = filter.equals("IMAGEIO") ? null
+                    : new PngEncoder(level, PngEncoder.Filter.valueOf(filter));
+        }
+
+        public Object run() throws Exception {
+            png.reset();
+            if (encoder == null) {
+                ImageIO.write(picture, "png", png);
+            } else {
+                encoder.encode(picture, png);
+            }
+            return png.size();
+        }
+
+        public void close() {
+            if (encoder != null) {
+                encoder.close();
+            }
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Save - saves a picture of a scene to a file, either
+     * straight away or in the background, waiting for it to be written.
+     */
+    public static class Save implements Workload {
+        private final Canvas canvas;
+        private final boolean async;
+        private final File file;
+
+        public Save(String mode) throws Exception {
+            canvas = RenderWorkloads.scene(RenderWorkloads.WIDTH, RenderWorkloads.HEIGHT,
+                                           SCENE_SHAPES, "mixed");
+            async = mode.equals("async");
+            file = File.createTempFile("benchmark", ".png");
+        }
+
+        public Object run() throws Exception {
+            if (async) {
+                return canvas.saveToFileAsync(file).get();
+            }
+            canvas.saveToFile(file);
+            return file;
+        }
+
+        public void close() {
+            file.delete();
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Record - moves a few shapes and shows a frame while the
+     * canvas is being recorded. Raw recordings are thrown away as they are
+     * written; the others go to a temporary file.
+     */
+    public static class Record implements Workload {
+        private static final int MOVING = 20;
+
+        private final Canvas canvas;
+        private final List<Object> moving;
+        private final File file;
+        private int step = 0;
+
+        public Record(String format) throws Exception {
+            canvas = RenderWorkloads.scene(RenderWorkloads.WIDTH, RenderWorkloads.HEIGHT,
+                                           SCENE_SHAPES, "mixed");
+            canvas.pause(true);
+            moving = RenderWorkloads.addShapes(canvas, MOVING, "circle", new Random(2));
+
+            FrameRecorder.Format recording = FrameRecorder.Format.valueOf(format);
+            if (recording == FrameRecorder.Format.RAW) {
+                file = null;
+                canvas.startRecording(Channels.newChannel(OutputStream.nullOutputStream()),
+                                      recording);
+            } else {
+                file = File.createTempFile("benchmark", "." + format.toLowerCase());
+                canvas.startRecording(file, recording);
+            }
+        }
+
+        public Object run() {
+            int distance = (step++ & 1) == 0 ? 3 : -3;
+            for (Object shape : moving) {
+                RenderWorkloads.move(shape, distance);
+            }
+            canvas.redraw();
+            return canvas;
+        }
+
+        public void close() throws Exception {
+            canvas.stopRecording();
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class SceneSave - saves a scene of shapes to a scene file.
+     */
+    public static class SceneSave implements Workload {
+        private final Canvas canvas;
+        private final File file;
+
+        public SceneSave(int shapes) throws Exception {
+            canvas = RenderWorkloads.scene(RenderWorkloads.WIDTH, RenderWorkloads.HEIGHT,
+                                           shapes, "mixed");
+            file = File.createTempFile("benchmark", ".scene");
+        }
+
+        public Object run() throws Exception {
+            SceneFile.save(canvas, file);
+            return file;
+        }
+
+        public void close() {
+            file.delete();
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class SceneLoad - loads a scene file onto an empty canvas, as
+     * shape objects or as bulk shapes.
+     */
+    public static class SceneLoad implements Workload {
+        private final Canvas canvas = Canvas.createHeadlessCanvas("Benchmark",
+                RenderWorkloads.WIDTH, RenderWorkloads.HEIGHT, Color.white);
+        private final boolean bulk;
+        private final File file;
+
+        public SceneLoad(int shapes, boolean bulk) throws Exception {
+            this.bulk = bulk;
+            file = File.createTempFile("benchmark", ".scene");
+            SceneFile.save(RenderWorkloads.scene(RenderWorkloads.WIDTH, RenderWorkloads.HEIGHT,
+                                                 shapes, "mixed"), file);
+        }
+
+        public Object run() throws Exception {
+            canvas.erase();
+            if (bulk) {
+                return SceneFile.loadAsBulkShapes(file, canvas);
+            }
+            return SceneFile.load(file, canvas);
+        }
+
+        public void close() {
+            file.delete();
+        }
+    }
+}
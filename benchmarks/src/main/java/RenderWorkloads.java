@@ -0,0 +1,326 @@
+import benchmarks.Workload;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * RenderWorkloads builds scenes of shapes and draws them, for the render
+ * benchmarks. Every scene is made from the same random numbers, so each
+ * run of a benchmark draws the same picture.
+ *
+ * @version 2026.10.17
+ */
+public class RenderWorkloads {
+    static final int WIDTH = 800;
+    static final int HEIGHT = 600;
+
+    private static final String[] COLORS = {
+        "red", "black", "blue", "yellow", "green", "magenta", "white",
+        "#ff8800", "#3366cc", "#99cc33"
+    };
+
+    private RenderWorkloads() {
+    }
+
+    /**
+     * Make a headless canvas with shapes on it.
+     *
+     * @param width the width of the canvas
+     * @param height the height of the canvas
+     * @param shapes the number of shapes
+     * @param type the kind of shapes: "circle", "rect", "triangle", "arc"
+     * or "mixed"
+     * @return the canvas
+     */
+    static Canvas scene(int width, int height, int shapes, String type) {
+        Canvas canvas = Canvas.createHeadlessCanvas("Benchmark", width, height, Color.white);
+        addShapes(canvas, shapes, type, new Random(1));
+        return canvas;
+    }
+
+    /**
+     * Add shapes of random sizes, places and colors to a canvas, in one
+     * batch.
+     *
+     * @return the shapes added
+     */
+    static List<Object> addShapes(Canvas canvas, int count, String type, Random random) {
+        List<Object> added = new ArrayList<>(count);
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        int largest = Math.max(width, height) / 16;
+
+        canvas.batch(() -> {
+            for (int i = 0; i < count; i++) {
+                String kind = type;
+                if (kind.equals("mixed")) {
+                    kind = new String[] {"circle", "rect", "triangle", "arc"}[i % 4];
+                }
+                added.add(addShape(canvas, kind, random.nextInt(width), random.nextInt(height),
+                                   10 + random.nextInt(largest),
+                                   COLORS[random.nextInt(COLORS.length)]));
+            }
+        });
+        return added;
+    }
+
+    /**
+     * Add the same shapes as addShapes() does for "mixed" to a canvas's
+     * bulk shapes instead of as shape objects.
+     *
+     * @return the number of bulk shapes on the canvas
+     */
+    static int addBulkShapes(Canvas canvas, int count, Random random) {
+        BulkShapes bulk = canvas.getBulkShapes();
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        int largest = Math.max(width, height) / 16;
+
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            int size = 10 + random.nextInt(largest);
+            String color = COLORS[random.nextInt(COLORS.length)];
+            switch (i % 4) {
+                case 0:
+                    bulk.addCircle(x, y, size, color);
+                    break;
+                case 1:
+                    bulk.addRect(x, y, size, size / 2, color);
+                    break;
+                case 2:
+                    bulk.addTriangle(x, y, size, size, color);
+                    break;
+                default:
+                    bulk.addArc(x, y, size, 30, 330, color);
+                    break;
+            }
+        }
+        return bulk.size();
+    }
+
+    /**
+     * Add one shape to a canvas, the way a student's code would.
+     */
+    static Object addShape(Canvas canvas, String kind, int x, int y, int size,
+                                   String color) {
+        switch (kind) {
+            case "circle": {
+                Circle circle = new Circle();
+                circle.setPosition(x, y);
+                circle.changeSize(size);
+                circle.changeColor(color);
+                circle.makeVisible(canvas);
+                return circle;
+            }
+            case "rect": {
+                Rect rect = new Rect();
+                rect.setPosition(x, y);
+                rect.changeSize(size / 2, size);
+                rect.changeColor(color);
+                rect.makeVisible(canvas);
+                return rect;
+            }
+            case "triangle": {
+                Triangle triangle = new Triangle();
+                triangle.setPosition(x, y);
+                triangle.changeSize(size, size);
+                triangle.changeColor(color);
+                triangle.makeVisible(canvas);
+                return triangle;
+            }
+            case "arc": {
+                Arc arc = new Arc(x, y, size, 30, 330, color, false);
+                arc.makeVisible(canvas);
+                return arc;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + kind);
+        }
+    }
+
+    /**
+     * Move a shape sideways.
+     */
+    static void move(Object shape, int distance) {
+        if (shape instanceof Circle) {
+            ((Circle) shape).moveHorizontal(distance);
+        } else if (shape instanceof Rect) {
+            ((Rect) shape).moveHorizontal(distance);
+        } else if (shape instanceof Triangle) {
+            ((Triangle) shape).moveHorizontal(distance);
+        } else {
+            ((Arc) shape).moveHorizontal(distance);
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class SceneBuild - erases the canvas and adds a scene of shapes
+     * to it, in one batch or with a redraw after every shape as there was
+     * before batches. The canvas is recorded to nowhere, because a headless
+     * canvas only draws its frames while being recorded.
+     */
+    public static class SceneBuild implements Workload {
+        private final Canvas canvas = Canvas.createHeadlessCanvas("Benchmark", WIDTH, HEIGHT,
+                                                                  Color.white);
+        private final int shapes;
+        private final boolean batched;
+
+        public SceneBuild(int shapes, boolean batched) throws Exception {
+            this.shapes = shapes;
+            this.batched = batched;
+            canvas.startRecording(Channels.newChannel(OutputStream.nullOutputStream()),
+                                  FrameRecorder.Format.RAW);
+        }
+
+        public Object run() {
+            canvas.erase();
+            Random random = new Random(1);
+            if (batched) {
+                return addShapes(canvas, shapes, "mixed", random);
+            }
+
+            int largest = Math.max(WIDTH, HEIGHT) / 16;
+            List<Object> added = new ArrayList<>(shapes);
+            for (int i = 0; i < shapes; i++) {
+                String kind = new String[] {"circle", "rect", "triangle", "arc"}[i % 4];
+                added.add(addShape(canvas, kind, random.nextInt(WIDTH), random.nextInt(HEIGHT),
+                                   10 + random.nextInt(largest),
+                                   COLORS[random.nextInt(COLORS.length)]));
+            }
+            return added;
+        }
+
+        public void close() throws Exception {
+            canvas.stopRecording();
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Redraw - draws a whole picture of a scene.
+     */
+    public static class Redraw implements Workload {
+        private final Canvas canvas;
+
+        public Redraw(int shapes, String type) {
+            canvas = scene(WIDTH, HEIGHT, shapes, type);
+        }
+
+        public Object run() {
+            return canvas.createImage();
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class TriangleDraw - draws the triangles of a scene straight
+     * onto a picture that is kept from one run to the next, so that the
+     * only objects made while measuring are ones made by the triangles'
+     * draw code and Java2D. Run with the GC profiler (-prof gc) to see
+     * the bytes allocated per triangle drawn. The way "fillPolygon" fills
+     * the same triangles with Graphics.fillPolygon() and corner arrays
+     * made beforehand, to show what Java2D allocates by itself.
+     */
+    public static class TriangleDraw implements Workload {
+        private final BufferedImage picture = new BufferedImage(WIDTH, HEIGHT,
+                                                                BufferedImage.TYPE_INT_RGB);
+        private final Graphics2D graphics = picture.createGraphics();
+        private final Canvas.DrawShape[] draws;
+
+        public TriangleDraw(int shapes, String way) {
+            Canvas canvas = Canvas.createHeadlessCanvas("Benchmark", WIDTH, HEIGHT, Color.white);
+            List<Object> added = addShapes(canvas, shapes, "triangle", new Random(1));
+            draws = new Canvas.DrawShape[added.size()];
+            if (way.equals("fillPolygon")) {
+                for (int i = 0; i < draws.length; i++) {
+                    Triangle triangle = (Triangle) added.get(i);
+                    int x = triangle.getX();
+                    int y = triangle.getY();
+                    int halfWidth = triangle.getWidth() / 2;
+                    int[] xpoints = {x, x + halfWidth, x - halfWidth};
+                    int[] ypoints = {y, y + triangle.getHeight(), y + triangle.getHeight()};
+                    Color color = triangle.getColor();
+                    draws[i] = g -> {
+                        g.setColor(color);
+                        g.fillPolygon(xpoints, ypoints, 3);
+                    };
+                }
+            } else {
+                List<Canvas.ShapeEntry> entries = canvas.findEntries(new HashSet<>(added));
+                for (int i = 0; i < draws.length; i++) {
+                    draws[i] = entries.get(i).drawFunction;
+                }
+            }
+        }
+
+        public Object run() {
+            for (Canvas.DrawShape draw : draws) {
+                draw.draw(graphics);
+            }
+            return picture;
+        }
+
+        public void close() {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class CachedLayer - moves a few shapes in front of a large
+     * scene on a layer of its own, then draws a whole picture.
+     */
+    public static class CachedLayer implements Workload {
+        private static final int MOVING = 50;
+
+        private final Canvas canvas;
+        private final List<Object> moving;
+        private int step = 0;
+
+        public CachedLayer(int shapes, boolean cached) {
+            canvas = Canvas.createHeadlessCanvas("Benchmark", WIDTH, HEIGHT, Color.white);
+            canvas.pause(true);
+
+            Random random = new Random(1);
+            for (Object shape : addShapes(canvas, shapes, "mixed", random)) {
+                canvas.setLayer(shape, -1);
+            }
+            canvas.setLayerCached(-1, cached);
+            moving = addShapes(canvas, MOVING, "circle", random);
+        }
+
+        public Object run() {
+            int distance = (step++ & 1) == 0 ? 3 : -3;
+            for (Object shape : moving) {
+                move(shape, distance);
+            }
+            return canvas.createImage();
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Tiles - draws a whole picture of a poster-sized scene on
+     * a number of threads.
+     */
+    public static class Tiles implements Workload {
+        private final Canvas canvas;
+
+        public Tiles(int threads, int shapes) {
+            canvas = scene(4000, 3000, shapes, "mixed");
+            canvas.setRenderThreads(threads);
+        }
+
+        public Object run() {
+            return canvas.createImage();
+        }
+    }
+}
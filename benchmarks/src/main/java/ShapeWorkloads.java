@@ -0,0 +1,375 @@
+import benchmarks.Workload;
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ShapeWorkloads looks up, stores and changes shapes, for the shape
+ * benchmarks.
+ *
+ * @version 2026.10.17
+ */
+public class ShapeWorkloads {
+    private ShapeWorkloads() {
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class ParseColor - turns a color name or hex string into a
+     * Color.
+     */
+    public static class ParseColor implements Workload {
+        private final String color;
+
+        public ParseColor(String color) {
+            this.color = color;
+        }
+
+        public Object run() {
+            return Canvas.getColor(color);
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class FindShapes - finds the shapes under a small area of a
+     * scene, such as the area under a mouse pointer.
+     */
+    public static class FindShapes implements Workload {
+        private static final int AREAS = 1024;
+
+        private final Canvas canvas;
+        private final Rectangle[] areas = new Rectangle[AREAS];
+        private int next = 0;
+
+        public FindShapes(int shapes) {
+            canvas = RenderWorkloads.scene(RenderWorkloads.WIDTH, RenderWorkloads.HEIGHT,
+                                           shapes, "mixed");
+            Random random = new Random(2);
+            for (int i = 0; i < AREAS; i++) {
+                areas[i] = new Rectangle(random.nextInt(RenderWorkloads.WIDTH),
+                                         random.nextInt(RenderWorkloads.HEIGHT), 4, 4);
+            }
+        }
+
+        public Object run() {
+            return canvas.findShapes(areas[next++ & (AREAS - 1)]);
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Grid - adds, moves or finds shapes in the canvas's grid
+     * of shape bounds. The shapes are plain squares that draw nothing, and
+     * the canvas grows with their number so each area holds about as many
+     * shapes at every size. A shape added is removed again in the same run,
+     * so the number of shapes stays the same.
+     */
+    public static class Grid implements Workload {
+        private static final int SIZE = 20;
+        private static final int AREAS = 1024;
+
+        private final Canvas canvas;
+        private final Square[] squares;
+        private final Rectangle[] areas = new Rectangle[AREAS];
+        private final String operation;
+        private final Square added = new Square();
+        private int next = 0;
+
+        public Grid(int shapes, String operation) {
+            this.operation = operation;
+            int side = (int) Math.sqrt(shapes * 400.0);
+            canvas = Canvas.createHeadlessCanvas("Benchmark", side, side, Color.white);
+            canvas.pause(true);
+
+            Random random = new Random(1);
+            squares = new Square[shapes];
+            canvas.batch(() -> {
+                for (int i = 0; i < shapes; i++) {
+                    squares[i] = new Square();
+                    squares[i].x = random.nextInt(side);
+                    squares[i].y = random.nextInt(side);
+                    squares[i].addTo(canvas);
+                }
+            });
+            for (int i = 0; i < AREAS; i++) {
+                areas[i] = new Rectangle(random.nextInt(side), random.nextInt(side),
+                                         SIZE, SIZE);
+            }
+        }
+
+        public Object run() {
+            Rectangle area = areas[next++ & (AREAS - 1)];
+            switch (operation) {
+                case "insert":
+                    added.x = area.x;
+                    added.y = area.y;
+                    added.addTo(canvas);
+                    canvas.remove(added);
+                    return added;
+                case "move": {
+                    Square square = squares[next % squares.length];
+                    square.x = area.x;
+                    square.y = area.y;
+                    canvas.update(square);
+                    return square;
+                }
+                default:
+                    return canvas.findShapes(area);
+            }
+        }
+
+        /**
+         * A square that draws nothing, as light as a shape can be.
+         */
+        private static class Square {
+            int x;
+            int y;
+
+            void addTo(Canvas canvas) {
+                canvas.add(this, g -> { }, () -> new Rectangle(x, y, SIZE, SIZE));
+            }
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Footprint - adds a scene of shapes to an empty canvas, as
+     * shape objects or as bulk shapes, and finds how much memory they take
+     * up once the garbage made while adding them has been collected.
+     */
+    public static class Footprint implements Workload {
+        private final int shapes;
+        private final boolean bulk;
+
+        public Footprint(int shapes, String store) {
+            this.shapes = shapes;
+            this.bulk = store.equals("bulk");
+        }
+
+        /**
+         * @return the bytes of memory taken up by the shapes
+         */
+        public Object run() {
+            Canvas canvas = Canvas.createHeadlessCanvas("Benchmark", RenderWorkloads.WIDTH,
+                                                        RenderWorkloads.HEIGHT, Color.white);
+            canvas.pause(true);
+            long before = usedMemory();
+            Object scene;
+            if (bulk) {
+                scene = RenderWorkloads.addBulkShapes(canvas, shapes, new Random(1));
+            } else {
+                scene = RenderWorkloads.addShapes(canvas, shapes, "mixed", new Random(1));
+            }
+            long after = usedMemory();
+            Reference.reachabilityFence(canvas);
+            Reference.reachabilityFence(scene);
+            return after - before;
+        }
+
+        private static long usedMemory() {
+            // Objects that are cleaned up when collected, such as a
+            // canvas's pictures, take more than one collection to go
+            Runtime runtime = Runtime.getRuntime();
+            long used = Long.MAX_VALUE;
+            for (int i = 0; i < 10; i++) {
+                System.gc();
+                long now = runtime.totalMemory() - runtime.freeMemory();
+                if (now >= used) {
+                    break;
+                }
+                used = now;
+            }
+            return used;
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Pick - picks out the shape on top at a point of a scene,
+     * or every shape drawn there, as a mouse click would.
+     */
+    public static class Pick implements Workload {
+        private static final int POINTS = 1024;
+
+        private final Canvas canvas;
+        private final Point[] points = new Point[POINTS];
+        private final boolean all;
+        private int next = 0;
+
+        public Pick(int shapes, String operation) {
+            canvas = RenderWorkloads.scene(RenderWorkloads.WIDTH, RenderWorkloads.HEIGHT,
+                                           shapes, "mixed");
+            all = operation.equals("all");
+            Random random = new Random(2);
+            for (int i = 0; i < POINTS; i++) {
+                points[i] = new Point(random.nextInt(RenderWorkloads.WIDTH),
+                                      random.nextInt(RenderWorkloads.HEIGHT));
+            }
+        }
+
+        public Object run() {
+            Point point = points[next++ & (POINTS - 1)];
+            return all ? canvas.pickShapes(point.x, point.y)
+                       : canvas.pickShape(point.x, point.y);
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Collide - finds the collidable shapes of a scene that
+     * overlap, with every shape moved a little first.
+     */
+    public static class Collide implements Workload {
+        private final Canvas canvas;
+        private final Circle[] circles;
+        private int step = 0;
+
+        public Collide(int shapes) {
+            // Spread shapes the size of a game's balls and bricks over an
+            // area that grows with their number, so each one overlaps
+            // about the same number of others
+            int side = (int) Math.sqrt(shapes * 1000.0);
+            canvas = Canvas.createHeadlessCanvas("Benchmark", side, side, Color.white);
+            canvas.pause(true);
+            Random random = new Random(1);
+            List<Circle> moving = new ArrayList<>();
+            canvas.batch(() -> {
+                for (int i = 0; i < shapes; i++) {
+                    String kind = new String[] {"circle", "rect", "triangle", "arc"}[i % 4];
+                    Object shape = RenderWorkloads.addShape(canvas, kind, random.nextInt(side),
+                                                            random.nextInt(side),
+                                                            6 + random.nextInt(20), "red");
+                    canvas.setCollidable(shape, true);
+                    if (shape instanceof Circle) {
+                        moving.add((Circle) shape);
+                    }
+                }
+            });
+            circles = moving.toArray(new Circle[0]);
+        }
+
+        public Object run() {
+            int distance = (step++ & 1) == 0 ? 2 : -2;
+            canvas.batch(() -> {
+                for (Circle circle : circles) {
+                    circle.moveHorizontal(distance);
+                }
+            });
+            return canvas.checkCollisions();
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Bulk - fills the canvas's bulk shapes with circles, or
+     * draws a whole picture of them.
+     */
+    public static class Bulk implements Workload {
+        private final Canvas canvas = Canvas.createHeadlessCanvas("Benchmark",
+                RenderWorkloads.WIDTH, RenderWorkloads.HEIGHT, Color.white);
+        private final BulkShapes bulk;
+        private final int shapes;
+        private final boolean draw;
+
+        public Bulk(int shapes, String operation) {
+            this.shapes = shapes;
+            this.draw = operation.equals("draw");
+            canvas.pause(true);
+            bulk = canvas.getBulkShapes();
+            fill();
+        }
+
+        private int fill() {
+            bulk.clear();
+            Random random = new Random(1);
+            for (int i = 0; i < shapes; i++) {
+                bulk.addCircle(random.nextInt(RenderWorkloads.WIDTH),
+                               random.nextInt(RenderWorkloads.HEIGHT),
+                               5 + random.nextInt(20), "blue");
+            }
+            return bulk.size();
+        }
+
+        public Object run() {
+            if (draw) {
+                return canvas.createImage();
+            }
+            return fill();
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Contention - threads move shapes with run() while another
+     * shows frames with runAlongside(), so they compete for the canvas's
+     * shapes lock. The canvas is recorded to nowhere, because a headless
+     * canvas only draws its frames while being recorded.
+     */
+    public static class Contention implements Workload {
+        private final Canvas canvas;
+        private final List<Object> shapes;
+
+        public Contention(int shapes) throws Exception {
+            canvas = Canvas.createHeadlessCanvas("Benchmark", RenderWorkloads.WIDTH,
+                                                 RenderWorkloads.HEIGHT, Color.white);
+            canvas.pause(true);
+            this.shapes = RenderWorkloads.addShapes(canvas, shapes, "mixed", new Random(1));
+            canvas.startRecording(Channels.newChannel(OutputStream.nullOutputStream()),
+                                  FrameRecorder.Format.RAW);
+        }
+
+        public Object run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Object shape = shapes.get(random.nextInt(shapes.size()));
+            RenderWorkloads.move(shape, random.nextBoolean() ? 1 : -1);
+            return shape;
+        }
+
+        public Object runAlongside() {
+            canvas.redraw();
+            return canvas;
+        }
+
+        public void close() throws Exception {
+            canvas.stopRecording();
+        }
+    }
+
+    /**
+     * **********************************************************************
+     * Inner class Metrics - moves a shape, with or without metrics on, to
+     * show what metrics cost.
+     */
+    public static class Metrics implements Workload {
+        private final Canvas canvas;
+        private final Circle circle = new Circle();
+        private int step = 0;
+
+        public Metrics(boolean enabled) {
+            canvas = RenderWorkloads.scene(RenderWorkloads.WIDTH, RenderWorkloads.HEIGHT,
+                                           1000, "mixed");
+            canvas.pause(true);
+            circle.makeVisible(canvas);
+            if (enabled) {
+                canvas.enableMetrics();
+            }
+        }
+
+        public Object run() {
+            circle.moveHorizontal((step++ & 1) == 0 ? 1 : -1);
+            return circle;
+        }
+
+        public void close() {
+            canvas.disableMetrics();
+        }
+    }
+}
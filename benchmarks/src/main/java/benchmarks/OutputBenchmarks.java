@@ -0,0 +1,168 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of saving pictures, recordings and scene files.
+ *
+ * @version 2026.10.17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class OutputBenchmarks {
+    /**
+     * Encode a picture as a PNG in memory, at sizes from 800x600 up to 8K.
+     */
+    @Benchmark
+    public Object encode(Encode state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Save a picture to a file, straight away or in the background.
+     */
+    @Benchmark
+    public Object save(Save state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Show a frame while recording.
+     */
+    @Benchmark
+    public Object record(Record state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Save a scene to a scene file.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object sceneSave(SceneSave state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Load a scene file onto an empty canvas.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object sceneLoad(SceneLoad state) throws Exception {
+        return state.workload.run();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Encode {
+        @Param({"IMAGEIO", "NONE", "SUB", "UP", "PAETH", "ADAPTIVE"})
+        public String filter;
+
+        @Param({"1", "6"})
+        public int level;
+
+        @Param({"800x600", "1920x1080", "3840x2160", "7680x4320"})
+        public String size;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("OutputWorkloads$Encode", filter, level, size);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Save {
+        @Param({"file", "async"})
+        public String mode;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("OutputWorkloads$Save", mode);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Record {
+        @Param({"RAW", "GIF", "APNG"})
+        public String format;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("OutputWorkloads$Record", format);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SceneSave {
+        @Param({"10000", "100000"})
+        public int shapes;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("OutputWorkloads$SceneSave", shapes);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SceneLoad {
+        @Param({"10000", "100000"})
+        public int shapes;
+
+        @Param({"false", "true"})
+        public boolean bulk;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("OutputWorkloads$SceneLoad", shapes, bulk);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+}
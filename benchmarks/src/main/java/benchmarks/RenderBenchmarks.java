@@ -0,0 +1,211 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of building scenes and drawing pictures of them.
+ *
+ * @version 2026.10.17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmarks {
+    // The number of shapes drawn for each invocation of drawShape()
+    private static final int TYPE_SHAPES = 1000;
+
+    /**
+     * Erase the canvas and add a scene of shapes to it, in one batch or
+     * redrawing after each shape. Without a batch, 100000 shapes take
+     * minutes to add, so this has fewer iterations than the others.
+     */
+    @Benchmark
+    @Warmup(iterations = 1, time = 1)
+    @Measurement(iterations = 3, time = 1)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object sceneBuild(SceneBuild state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Draw a whole picture of a scene of mixed shapes.
+     */
+    @Benchmark
+    public Object redraw(Redraw state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Draw one shape of each kind, as part of a whole picture.
+     */
+    @Benchmark
+    @OperationsPerInvocation(TYPE_SHAPES)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object drawShape(ShapeType state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Draw triangles onto a picture that is kept from one run to the next,
+     * with their own draw code or with plain fillPolygon() calls. Run with
+     * -prof gc; gc.alloc.rate.norm is the bytes allocated for each triangle
+     * drawn, which should be the same both ways, since Triangle allocates
+     * nothing of its own.
+     */
+    @Benchmark
+    @OperationsPerInvocation(TYPE_SHAPES)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object drawTriangle(TriangleDraw state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Move a few shapes in front of a large scene on a layer that may be
+     * cached, and draw a whole picture.
+     */
+    @Benchmark
+    public Object cachedLayer(CachedLayer state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Draw a whole picture of a poster-sized scene on a number of threads.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object tiles(Tiles state) throws Exception {
+        return state.workload.run();
+    }
+
+    @State(Scope.Benchmark)
+    public static class SceneBuild {
+        @Param({"1000", "10000", "100000"})
+        public int shapes;
+
+        @Param({"true", "false"})
+        public boolean batched;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("RenderWorkloads$SceneBuild", shapes, batched);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Redraw {
+        @Param({"100", "1000", "10000", "100000"})
+        public int shapes;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("RenderWorkloads$Redraw", shapes, "mixed");
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ShapeType {
+        @Param({"circle", "rect", "triangle", "arc"})
+        public String type;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("RenderWorkloads$Redraw", TYPE_SHAPES, type);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class TriangleDraw {
+        @Param({"triangle", "fillPolygon"})
+        public String way;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("RenderWorkloads$TriangleDraw", TYPE_SHAPES, way);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CachedLayer {
+        @Param({"false", "true"})
+        public boolean cached;
+
+        @Param({"20000"})
+        public int shapes;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("RenderWorkloads$CachedLayer", shapes, cached);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Tiles {
+        @Param({"1", "2", "4", "8"})
+        public int threads;
+
+        @Param({"50000"})
+        public int shapes;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("RenderWorkloads$Tiles", threads, shapes);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Run runs the benchmarks, saving the results as JSON so they can be
+ * compared from one version to the next. It takes the same options as
+ * JMH; unless a result file is chosen with -rf or -rff, the results are
+ * saved to results/VERSION.json.
+ *
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmarks]
+ *
+ * @version 2026.10.17
+ */
+public class Run {
+    private Run() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+
+        if (!options.contains("-rf") && !options.contains("-rff")) {
+            String version = Run.class.getPackage().getImplementationVersion();
+            File results = new File("results", (version == null ? "dev" : version) + ".json");
+            results.getParentFile().mkdirs();
+
+            options.addAll(Arrays.asList("-rf", "json", "-rff", results.getPath()));
+        }
+
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
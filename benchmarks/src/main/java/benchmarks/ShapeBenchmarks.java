@@ -0,0 +1,280 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of looking up, storing and changing shapes.
+ *
+ * @version 2026.10.17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ShapeBenchmarks {
+    /**
+     * Turn a color name or hex string into a Color.
+     */
+    @Benchmark
+    public Object getColor(ParseColor state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Find the shapes under a small area of a scene.
+     */
+    @Benchmark
+    public Object findShapes(FindShapes state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Add a shape to the grid of shape bounds and take it out again, move a
+     * shape to somewhere else in it, or find the shapes in a small area of
+     * it.
+     */
+    @Benchmark
+    public Object grid(Grid state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Add a scene of shapes as shape objects or as bulk shapes, and find
+     * the memory they take up. JMH adds up the counters over every run,
+     * so the bytes per shape is memoryBytes / memoryShapes. The time
+     * includes collecting garbage before and after. G1 is used whatever
+     * the machine, since the serial collector, picked on machines with
+     * one processor, doesn't report the memory in use exactly.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-XX:+UseG1GC"})
+    public Object footprint(Footprint state, Memory memory) throws Exception {
+        Object bytes = state.workload.run();
+        memory.memoryBytes += (Long) bytes;
+        memory.memoryShapes += state.shapes;
+        return bytes;
+    }
+
+    /**
+     * Pick out the shape on top at a point of a scene, or all the shapes
+     * there.
+     */
+    @Benchmark
+    public Object pick(Pick state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Move the circles of a scene and find the shapes that overlap.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object collide(Collide state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Fill the bulk shapes with circles, or draw a whole picture of them.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object bulk(Bulk state) throws Exception {
+        return state.workload.run();
+    }
+
+    /**
+     * Move shapes on three threads while a fourth shows frames.
+     */
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(3)
+    public Object move(Contention state) throws Exception {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(1)
+    public Object show(Contention state) throws Exception {
+        return state.workload.runAlongside();
+    }
+
+    /**
+     * Move a shape, with or without metrics on.
+     */
+    @Benchmark
+    public Object metrics(Metrics state) throws Exception {
+        return state.workload.run();
+    }
+
+    @State(Scope.Benchmark)
+    public static class ParseColor {
+        @Param({"red", "#ff8800"})
+        public String color;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("ShapeWorkloads$ParseColor", color);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FindShapes {
+        @Param({"1000", "100000"})
+        public int shapes;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("ShapeWorkloads$FindShapes", shapes);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Grid {
+        @Param({"10000", "100000", "1000000"})
+        public int shapes;
+
+        @Param({"insert", "move", "query"})
+        public String operation;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("ShapeWorkloads$Grid", shapes, operation);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Footprint {
+        @Param({"10000", "100000"})
+        public int shapes;
+
+        @Param({"objects", "bulk"})
+        public String store;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("ShapeWorkloads$Footprint", shapes, store);
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Memory {
+        // The memory taken up and the shapes added in this iteration
+        public long memoryBytes;
+        public long memoryShapes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            memoryBytes = 0;
+            memoryShapes = 0;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pick {
+        @Param({"1000", "100000"})
+        public int shapes;
+
+        @Param({"top", "all"})
+        public String operation;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("ShapeWorkloads$Pick", shapes, operation);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Collide {
+        @Param({"1000", "50000"})
+        public int shapes;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("ShapeWorkloads$Collide", shapes);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Bulk {
+        @Param({"10000", "100000"})
+        public int shapes;
+
+        @Param({"fill", "draw"})
+        public String operation;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("ShapeWorkloads$Bulk", shapes, operation);
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Contention {
+        @Param({"1000"})
+        public int shapes;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("ShapeWorkloads$Contention", shapes);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Metrics {
+        @Param({"false", "true"})
+        public boolean enabled;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workloads.create("ShapeWorkloads$Metrics", enabled);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+}
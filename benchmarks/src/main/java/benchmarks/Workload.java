@@ -0,0 +1,38 @@
+package benchmarks;
+
+/**
+ * A Workload is the work measured by a benchmark. JMH needs benchmarks to
+ * be in a named package, and code there can't use the shapes and canvas,
+ * which are in the default package. So each workload is written in the
+ * default package against this interface, made by name with
+ * Workloads.create() when a trial is set up, and then only called through
+ * this interface while being measured.
+ *
+ * @version 2026.10.17
+ */
+public interface Workload extends AutoCloseable {
+    /**
+     * Do the work being measured once.
+     *
+     * @return a result for the benchmark to consume, so the work isn't
+     * optimized away
+     */
+    Object run() throws Exception;
+
+    /**
+     * Do a second kind of work at the same time as run(), for benchmarks
+     * where threads do different things with the same shapes.
+     *
+     * @return a result for the benchmark to consume
+     */
+    default Object runAlongside() throws Exception {
+        throw new UnsupportedOperationException("No work to run alongside");
+    }
+
+    /**
+     * Let go of anything the workload made, such as files and threads.
+     */
+    @Override
+    default void close() throws Exception {
+    }
+}
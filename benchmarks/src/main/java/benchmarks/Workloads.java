@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Workloads makes the workloads written in the default package, given the
+ * name of their class.
+ *
+ * @version 2026.10.17
+ */
+public class Workloads {
+    private Workloads() {
+    }
+
+    /**
+     * Make a workload.
+     *
+     * @param className the name of the workload's class, such as
+     * "RenderWorkloads$Redraw"
+     * @param arguments the arguments for its constructor
+     * @return the workload
+     */
+    public static Workload create(String className, Object... arguments) throws Exception {
+        Class<?> type = Class.forName(className);
+        for (Constructor<?> constructor : type.getConstructors()) {
+            if (constructor.getParameterCount() == arguments.length) {
+                try {
+                    return (Workload) constructor.newInstance(arguments);
+                } catch (InvocationTargetException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
+        throw new IllegalArgumentException("No constructor for " + arguments.length
+                + " arguments in " + className);
+    }
+}